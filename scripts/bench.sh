@@ -0,0 +1,6 @@
+#!/bin/sh
+# offline scrape benchmark, see com.ajisaac.scrapebatch.bench.ScrapeBenchmark for the options
+
+cd "$(dirname "$0")/.." || exit 1
+mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/bench-classpath.txt || exit 1
+java -cp "target/test-classes:target/classes:$(cat target/bench-classpath.txt)" com.ajisaac.scrapebatch.bench.ScrapeBenchmark "$@"
@@ -1,10 +1,20 @@
 package com.ajisaac.scrapebatch.dto;
 
+import io.quarkus.runtime.ShutdownEvent;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
 import javax.inject.Singleton;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.Transactional;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 //@Singleton
 @ApplicationScoped
@@ -12,14 +22,46 @@ public class DatabaseService {
   private final JobPostingRepository jobPostingRepository;
   private final ScrapeJobRepository scrapeJobRepository;
   private final HighlightWordRepository highlightWordsRepository;
+  private final PageValidatorRepository pageValidatorRepository;
+  private final ScrapeCheckpointRepository scrapeCheckpointRepository;
+  private final DescriptionTaskRepository descriptionTaskRepository;
+  private final ScrapeRunRepository scrapeRunRepository;
+  private final TransactionSynchronizationRegistry transactions;
+
+  private final HrefIndex hrefIndex = hrefIndexFromConfig();
+  // check fingerprint hits against the database, so two hrefs sharing one can't hide a posting
+  private final boolean verifyDedupeHits =
+    ConfigProvider.getConfig().getOptionalValue("scrape.dedupe.verify-hits", Boolean.class).orElse(true);
 
   public DatabaseService(
     JobPostingRepository jobPostingRepository,
     ScrapeJobRepository scrapeJobRepository,
-    HighlightWordRepository highlightWordsRepository) {
+    HighlightWordRepository highlightWordsRepository,
+    PageValidatorRepository pageValidatorRepository,
+    ScrapeCheckpointRepository scrapeCheckpointRepository,
+    DescriptionTaskRepository descriptionTaskRepository,
+    ScrapeRunRepository scrapeRunRepository,
+    TransactionSynchronizationRegistry transactions) {
     this.jobPostingRepository = jobPostingRepository;
     this.scrapeJobRepository = scrapeJobRepository;
     this.highlightWordsRepository = highlightWordsRepository;
+    this.pageValidatorRepository = pageValidatorRepository;
+    this.scrapeCheckpointRepository = scrapeCheckpointRepository;
+    this.descriptionTaskRepository = descriptionTaskRepository;
+    this.scrapeRunRepository = scrapeRunRepository;
+    this.transactions = transactions;
+  }
+
+  private static HrefIndex hrefIndexFromConfig() {
+    Config config = ConfigProvider.getConfig();
+    boolean snapshot = config.getOptionalValue("scrape.dedupe.snapshot", Boolean.class).orElse(false);
+    return new HrefIndex(
+      config.getOptionalValue("scrape.dedupe.refresh-overlap-ids", Long.class).orElse(1_000L),
+      snapshot ? Paths.get(config.getOptionalValue("scrape.dedupe.dir", String.class).orElse("data/dedupe")) : null);
+  }
+
+  void onStop(@Observes ShutdownEvent event) {
+    hrefIndex.saveAll();
   }
 
   public List<JobPosting> getAllJobPostings() {
@@ -41,8 +83,30 @@ public class DatabaseService {
 
   @Transactional
   public void storeJobPostingInDatabase(JobPosting jp) {
-    if (jp != null)
-      jobPostingRepository.persist(jp);
+    if (jp == null)
+      return;
+    jobPostingRepository.persist(jp);
+    indexOnCommit(jp);
+  }
+
+  /**
+   * count the posting in the href index once the transaction storing it commits, a rollback must
+   * not leave a fingerprint for a posting we don't have
+   */
+  private void indexOnCommit(JobPosting posting) {
+    String site = posting.getJobSite();
+    String href = posting.getHref();
+    transactions.registerInterposedSynchronization(new Synchronization() {
+      @Override
+      public void beforeCompletion() {
+      }
+
+      @Override
+      public void afterCompletion(int status) {
+        if (status == javax.transaction.Status.STATUS_COMMITTED)
+          hrefIndex.add(site, href);
+      }
+    });
   }
 
   @Transactional
@@ -52,6 +116,18 @@ public class DatabaseService {
     return sj;
   }
 
+  /**
+   * remember the newest posting a complete run of the job saw
+   */
+  @Transactional
+  public void storeWatermark(long scrapeJobId, String href) {
+    var scrapeJob = scrapeJobRepository.findById(scrapeJobId);
+    if (scrapeJob == null)
+      return;
+    scrapeJob.setWatermarkHref(href);
+    scrapeJobRepository.persist(scrapeJob);
+  }
+
   public ScrapeJob getScrapeJobById(long idNum) {
     return scrapeJobRepository.findById(idNum);
   }
@@ -65,15 +141,177 @@ public class DatabaseService {
   }
 
   public List<String> getHrefsForSite(String site) {
-    var postings = jobPostingRepository.findAllByJobSite(site);
-    return postings.stream()
-      .map(JobPosting::getHref)
-      .collect(Collectors.toList());
+    return jobPostingRepository.findHrefsByJobSite(site);
+  }
+
+  /**
+   * Which of the hrefs we already have postings for on the site. Hrefs whose fingerprint we don't
+   * have are new without asking the database, the few that match are checked in one query.
+   */
+  public Set<String> findKnownHrefs(String site, Collection<String> hrefs) {
+    List<String> candidates = hrefIndex.candidates(site, hrefs, jobPostingRepository::findIdsAndHrefsAfter);
+    if (candidates.isEmpty())
+      return Set.of();
+    if (!verifyDedupeHits)
+      return new HashSet<>(candidates);
+    return new HashSet<>(jobPostingRepository.findHrefsIn(site, candidates));
+  }
+
+  public List<JobPosting> getJobPostingsForSite(String site) {
+    return jobPostingRepository.findAllByJobSite(site);
+  }
+
+  /**
+   * write back postings that were loaded earlier and changed since
+   */
+  @Transactional
+  public void updateJobPostings(List<JobPosting> postings) {
+    var em = jobPostingRepository.getEntityManager();
+    for (JobPosting posting : postings)
+      em.merge(posting);
   }
 
   public List<HighlightWord> getHighlightWords() {
     return this.highlightWordsRepository.findAll().list();
   }
 
+  public PageValidator getPageValidator(String url) {
+    return pageValidatorRepository.findByUrl(url);
+  }
+
+  /**
+   * remember the validators of a page we just finished processing, replacing any older ones
+   */
+  @Transactional
+  public void storePageValidator(String url, String etag, String lastModified, String contentHash) {
+    if (url == null)
+      return;
+
+    var validator = pageValidatorRepository.findByUrl(url);
+    if (validator == null) {
+      validator = new PageValidator();
+      validator.setUrl(url);
+    }
+    validator.setEtag(etag);
+    validator.setLastModified(lastModified);
+    validator.setContentHash(contentHash);
+    pageValidatorRepository.persist(validator);
+  }
+
+  public ScrapeCheckpoint getCheckpoint(long scrapeJobId) {
+    return scrapeCheckpointRepository.findByScrapeJobId(scrapeJobId);
+  }
+
+  /**
+   * write the job's checkpoint, replacing the one it had
+   */
+  @Transactional
+  public void storeCheckpoint(long scrapeJobId, int pageIndex, List<String> pendingHrefs) {
+    var checkpoint = scrapeCheckpointRepository.findByScrapeJobId(scrapeJobId);
+    if (checkpoint == null) {
+      checkpoint = new ScrapeCheckpoint();
+      checkpoint.setScrapeJobId(scrapeJobId);
+    }
+    checkpoint.setPageIndex(pageIndex);
+    checkpoint.setPendingHrefs(String.join("\n", pendingHrefs));
+    checkpoint.setUpdatedAt(System.currentTimeMillis());
+    scrapeCheckpointRepository.persist(checkpoint);
+  }
+
+  @Transactional
+  public void deleteCheckpoint(long scrapeJobId) {
+    scrapeCheckpointRepository.delete("scrapeJobId", scrapeJobId);
+  }
+
+  /**
+   * Queue the postings' description pages for any instance to pick up. A posting already queued
+   * for the job is left alone, unless it ran out of attempts, then it gets a fresh set.
+   *
+   * @return how many were queued
+   */
+  @Transactional
+  public int enqueueDescriptionTasks(long scrapeJobId, List<JobPosting> postings, int maxAttempts) {
+    int queued = 0;
+    for (JobPosting posting : postings) {
+      if (posting == null || posting.getHref() == null)
+        continue;
+      var task = DescriptionTask.of(scrapeJobId, posting);
+      if (task == null)
+        continue;
+      queued += descriptionTaskRepository.enqueue(scrapeJobId, task.getHref(), task.getPosting(), maxAttempts);
+    }
+    return queued;
+  }
+
+  /**
+   * lease up to limit queued description tasks to the owner
+   */
+  @Transactional
+  public List<DescriptionTask> claimDescriptionTasks(String owner, int limit, long leaseMillis, int maxAttempts) {
+    return descriptionTaskRepository.claim(owner, limit, leaseMillis, maxAttempts);
+  }
+
+  /**
+   * Store the finished posting and drop its task together. If the owner's lease ran out and
+   * someone else claimed the task in the meantime nothing is stored, they will store it. Nor is it
+   * stored if the site already has a posting for the href, another instance may have stored one
+   * since it was queued.
+   *
+   * @return false if the task wasn't the owner's anymore
+   */
+  @Transactional
+  public boolean completeDescriptionTask(long taskId, String owner, JobPosting posting) {
+    if (descriptionTaskRepository.delete("id = ?1 and leasedBy = ?2", taskId, owner) == 0)
+      return false;
+    if (posting == null || posting.getHref() == null)
+      return true;
+    if (posting.getJobSite() != null) {
+      // two instances storing the same posting at once take turns, the second sees the first's row
+      jobPostingRepository.lockHref(posting.getJobSite(), posting.getHref());
+      if (!jobPostingRepository.findHrefsIn(posting.getJobSite(), List.of(posting.getHref())).isEmpty())
+        return true;
+    }
+    jobPostingRepository.persist(posting);
+    indexOnCommit(posting);
+    return true;
+  }
+
+  /**
+   * give the task back to be tried again once the delay is over, unless it is out of attempts
+   */
+  @Transactional
+  public void failDescriptionTask(long taskId, String owner, long retryDelayMillis, String error) {
+    descriptionTaskRepository.release(taskId, owner, retryDelayMillis, error);
+  }
+
+  @Transactional
+  public void storeScrapeRun(ScrapeRun run) {
+    if (run != null)
+      scrapeRunRepository.persist(run);
+  }
+
+  /**
+   * the most recent runs, newest first
+   */
+  public List<ScrapeRun> getLatestScrapeRuns(int limit) {
+    return scrapeRunRepository.findLatest(limit);
+  }
+
+  /**
+   * live runs started at or after the given epoch millis, oldest first
+   */
+  public List<ScrapeRun> getLiveScrapeRunsSince(long startedAt) {
+    return scrapeRunRepository.findLiveSince(startedAt);
+  }
+
+  public DescriptionQueueStats getDescriptionQueueStats(int maxAttempts) {
+    long[] counts = descriptionTaskRepository.countByState(maxAttempts);
+    var stats = new DescriptionQueueStats();
+    stats.setQueued(counts[0]);
+    stats.setLeased(counts[1]);
+    stats.setFailed(counts[2]);
+    return stats;
+  }
+
 
 }
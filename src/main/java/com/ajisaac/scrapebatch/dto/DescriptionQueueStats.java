@@ -0,0 +1,37 @@
+package com.ajisaac.scrapebatch.dto;
+
+/**
+ * how many description tasks are waiting, being worked on, and given up on, across all instances
+ */
+public class DescriptionQueueStats {
+  private long queued;
+  private long leased;
+  private long failed;
+
+  public long getQueued() {
+    return queued;
+  }
+
+  public void setQueued(long queued) {
+    this.queued = queued;
+  }
+
+  public long getLeased() {
+    return leased;
+  }
+
+  public void setLeased(long leased) {
+    this.leased = leased;
+  }
+
+  /**
+   * tasks that ran out of attempts, they stay in the table with their last error
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  public void setFailed(long failed) {
+    this.failed = failed;
+  }
+}
@@ -0,0 +1,139 @@
+package com.ajisaac.scrapebatch.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.persistence.*;
+
+/**
+ * A description page some instance still has to fetch, parse and store. Main pages put these in
+ * the description_task table and workers on every instance claim them in batches, so a crawl's
+ * description pages are spread over however many instances are running.
+ *
+ * A claimed task is leased to the worker that claimed it. If the lease runs out before the task is
+ * done, say the instance died, any worker may claim it again. Each claim counts as an attempt and
+ * a task that runs out of attempts stays in the table, unclaimed, with the last error it got.
+ */
+@Entity
+@Table(name = "description_task", uniqueConstraints = @UniqueConstraint(columnNames = {"scrape_job_id", "href"}))
+public class DescriptionTask {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.AUTO)
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private long id;
+
+  @Column(name = "scrape_job_id", nullable = false)
+  private long scrapeJobId;
+  @Column(name = "href", columnDefinition = "TEXT", nullable = false)
+  private String href;
+  // the posting as parsed off the main page, as json
+  @Column(name = "posting", columnDefinition = "TEXT")
+  private String posting;
+  @Column(name = "attempts", nullable = false)
+  private int attempts;
+  // epoch millis by the database clock, the task is free to claim once this has passed
+  @Column(name = "lease_until", nullable = false)
+  private long leaseUntil;
+  @Column(name = "leased_by")
+  private String leasedBy;
+  @Column(name = "last_error", columnDefinition = "TEXT")
+  private String lastError;
+
+  /**
+   * a task for the posting's description page, null if the posting can't be written out
+   */
+  static DescriptionTask of(long scrapeJobId, JobPosting jobPosting) {
+    var task = new DescriptionTask();
+    task.setScrapeJobId(scrapeJobId);
+    task.setHref(jobPosting.getHref());
+    try {
+      task.setPosting(MAPPER.writeValueAsString(jobPosting));
+    } catch (JsonProcessingException e) {
+      return null;
+    }
+    return task;
+  }
+
+  /**
+   * the posting the main page gave us, without its description yet. Null if it can't be read back.
+   */
+  public JobPosting readPosting() {
+    if (posting == null)
+      return null;
+    try {
+      return MAPPER.readValue(posting, JobPosting.class);
+    } catch (JsonProcessingException e) {
+      return null;
+    }
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public long getScrapeJobId() {
+    return scrapeJobId;
+  }
+
+  public void setScrapeJobId(long scrapeJobId) {
+    this.scrapeJobId = scrapeJobId;
+  }
+
+  public String getHref() {
+    return href;
+  }
+
+  public void setHref(String href) {
+    this.href = href;
+  }
+
+  public String getPosting() {
+    return posting;
+  }
+
+  public void setPosting(String posting) {
+    this.posting = posting;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public long getLeaseUntil() {
+    return leaseUntil;
+  }
+
+  public void setLeaseUntil(long leaseUntil) {
+    this.leaseUntil = leaseUntil;
+  }
+
+  public String getLeasedBy() {
+    return leasedBy;
+  }
+
+  public void setLeasedBy(String leasedBy) {
+    this.leasedBy = leasedBy;
+  }
+
+  public String getLastError() {
+    return lastError;
+  }
+
+  public void setLastError(String lastError) {
+    this.lastError = lastError;
+  }
+}
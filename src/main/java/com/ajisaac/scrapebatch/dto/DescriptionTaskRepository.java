@@ -0,0 +1,83 @@
+package com.ajisaac.scrapebatch.dto;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.List;
+
+@ApplicationScoped
+public class DescriptionTaskRepository implements PanacheRepository<DescriptionTask> {
+
+  // leases are compared against the database's clock so instances with skewed clocks agree on them
+  private static final String NOW_MILLIS = "CAST(EXTRACT(EPOCH FROM clock_timestamp()) * 1000 AS BIGINT)";
+
+  /**
+   * Lease up to limit free tasks to the owner in one statement. SKIP LOCKED lets every instance
+   * claim at the same time without waiting on, or getting, each other's rows.
+   */
+  @SuppressWarnings("unchecked")
+  List<DescriptionTask> claim(String owner, int limit, long leaseMillis, int maxAttempts) {
+    return getEntityManager().createNativeQuery(
+      "UPDATE description_task SET attempts = attempts + 1, leased_by = ?1, lease_until = " + NOW_MILLIS + " + ?2"
+        + " WHERE id IN (SELECT id FROM description_task"
+        + " WHERE attempts < ?3 AND lease_until < " + NOW_MILLIS
+        + " ORDER BY id LIMIT ?4 FOR UPDATE SKIP LOCKED)"
+        + " RETURNING *", DescriptionTask.class)
+      .setParameter(1, owner)
+      .setParameter(2, leaseMillis)
+      .setParameter(3, maxAttempts)
+      .setParameter(4, limit)
+      .getResultList();
+  }
+
+  /**
+   * hand a task back to be tried again after the delay, only if the owner still holds it
+   */
+  int release(long id, String owner, long delayMillis, String error) {
+    return getEntityManager().createNativeQuery(
+      "UPDATE description_task SET leased_by = NULL, last_error = ?1, lease_until = " + NOW_MILLIS + " + ?2"
+        + " WHERE id = ?3 AND leased_by = ?4")
+      .setParameter(1, error)
+      .setParameter(2, delayMillis)
+      .setParameter(3, id)
+      .setParameter(4, owner)
+      .executeUpdate();
+  }
+
+  /**
+   * Queue the posting's description page for the job in one statement, so two instances queueing
+   * the same posting at once don't trip over the unique constraint. A task already queued is left
+   * alone, unless it ran out of attempts and nobody holds it, then it gets a fresh set right away.
+   *
+   * @return 1 if the task was queued or given a fresh set, 0 otherwise
+   */
+  int enqueue(long scrapeJobId, String href, String posting, int maxAttempts) {
+    return getEntityManager().createNativeQuery(
+      "INSERT INTO description_task (id, scrape_job_id, href, posting, attempts, lease_until)"
+        + " VALUES (nextval('hibernate_sequence'), ?1, ?2, ?3, 0, 0)"
+        + " ON CONFLICT (scrape_job_id, href) DO UPDATE SET attempts = 0, leased_by = NULL, lease_until = 0"
+        + " WHERE description_task.attempts >= ?4 AND description_task.lease_until < " + NOW_MILLIS)
+      .setParameter(1, scrapeJobId)
+      .setParameter(2, href)
+      .setParameter(3, posting)
+      .setParameter(4, maxAttempts)
+      .executeUpdate();
+  }
+
+  /**
+   * counts of tasks waiting, leased right now, and out of attempts, in that order
+   */
+  long[] countByState(int maxAttempts) {
+    String leased = "(leased_by IS NOT NULL AND lease_until >= " + NOW_MILLIS + ")";
+    Object[] row = (Object[]) getEntityManager().createNativeQuery(
+      "SELECT"
+        + " COUNT(*) FILTER (WHERE attempts < ?1 AND NOT " + leased + ") AS queued,"
+        + " COUNT(*) FILTER (WHERE " + leased + ") AS leased,"
+        + " COUNT(*) FILTER (WHERE attempts >= ?1 AND NOT " + leased + ") AS failed"
+        + " FROM description_task")
+      .setParameter(1, maxAttempts)
+      .getSingleResult();
+    return new long[]{
+      ((Number) row[0]).longValue(), ((Number) row[1]).longValue(), ((Number) row[2]).longValue()};
+  }
+}
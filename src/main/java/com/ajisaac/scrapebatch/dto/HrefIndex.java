@@ -0,0 +1,188 @@
+package com.ajisaac.scrapebatch.dto;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A 64 bit fingerprint of every href we have stored, per site, so deduping a main page is a hash
+ * lookup per posting instead of a query. Fingerprints sit in a LongHashSet, a flat long[], so a
+ * posting costs its 8 bytes plus the table's slack instead of a String and a set entry.
+ *
+ * A site is read from the database the first time it is asked for. After that every lookup first
+ * reads the postings with a newer id than we have, so other instances' postings count as soon as
+ * they are committed, same as when every dedupe asked the database. The reads go back overlapIds
+ * ids to catch ones that committed out of order. Every posting stored through DatabaseService is
+ * added once it is committed.
+ *
+ * With a snapshot dir each site is also written to disk after it is first read, and on shutdown,
+ * so a restart only reads the postings stored since.
+ *
+ * <pre>
+ *   SITE.fp   magic, version, newest id read, then the fingerprints
+ * </pre>
+ *
+ * A fingerprint only says we probably have the href, two hrefs can share one. Misses are exact.
+ */
+class HrefIndex {
+
+  private static final int MAGIC = 0x48524546;
+  private static final int VERSION = 1;
+  // magic, version, newest id and the count of fingerprints
+  private static final int HEADER_BYTES = Integer.BYTES * 3 + Long.BYTES;
+
+  private final long overlapIds;
+  // null when snapshots are off
+  private final Path dir;
+  private final Map<String, Site> sites = new ConcurrentHashMap<>();
+
+  HrefIndex(long overlapIds, Path dir) {
+    this.overlapIds = overlapIds;
+    this.dir = dir;
+  }
+
+  /**
+   * reads a site's postings from the database as id and href pairs
+   */
+  interface Loader {
+    List<Object[]> idsAndHrefsAfter(String site, long afterId);
+  }
+
+  /**
+   * the hrefs whose fingerprint we have for the site, after reading in what was stored since the
+   * last lookup
+   */
+  List<String> candidates(String site, Collection<String> hrefs, Loader loader) {
+    Site entry = site(site, loader);
+    List<String> candidates = new ArrayList<>();
+    for (String href : hrefs) {
+      if (href == null)
+        continue;
+      long fingerprint = fingerprint(href);
+      synchronized (entry) {
+        if (entry.fingerprints.contains(fingerprint))
+          candidates.add(href);
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * a posting for the site was just stored
+   */
+  void add(String site, String href) {
+    if (site == null || href == null)
+      return;
+    long fingerprint = fingerprint(href);
+    Site entry = sites.computeIfAbsent(site, s -> new Site());
+    synchronized (entry) {
+      entry.fingerprints.add(fingerprint);
+    }
+  }
+
+  /**
+   * write every site we have read to disk
+   */
+  void saveAll() {
+    if (dir == null)
+      return;
+    sites.forEach((site, entry) -> {
+      synchronized (entry) {
+        if (entry.loaded)
+          writeSnapshot(site, entry);
+      }
+    });
+  }
+
+  private Site site(String site, Loader loader) {
+    Site entry = sites.computeIfAbsent(site, s -> new Site());
+    synchronized (entry) {
+      refresh(site, entry, loader);
+    }
+    return entry;
+  }
+
+  private void refresh(String site, Site entry, Loader loader) {
+    boolean first = !entry.loaded;
+    if (first)
+      readSnapshot(site, entry);
+
+    boolean changed = false;
+    long afterId = entry.newestId == 0 ? 0 : Math.max(0, entry.newestId - overlapIds);
+    for (Object[] row : loader.idsAndHrefsAfter(site, afterId)) {
+      entry.newestId = Math.max(entry.newestId, ((Number) row[0]).longValue());
+      if (row[1] != null)
+        changed |= entry.fingerprints.add(fingerprint((String) row[1]));
+    }
+    entry.loaded = true;
+    // later reads are small, they wait for shutdown
+    if (first && changed && dir != null)
+      writeSnapshot(site, entry);
+  }
+
+  private void readSnapshot(String site, Site entry) {
+    if (dir == null)
+      return;
+    Path file = dir.resolve(site + ".fp");
+    if (!Files.exists(file))
+      return;
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        return;
+      long newestId = in.readLong();
+      entry.fingerprints.readFrom(in, (Files.size(file) - HEADER_BYTES) / Long.BYTES);
+      entry.newestId = newestId;
+    } catch (IOException e) {
+      // read everything from the database instead, whatever made it in is still right
+      System.out.println("Failed to read the href snapshot for " + site + ": " + e.getMessage());
+    }
+  }
+
+  private void writeSnapshot(String site, Site entry) {
+    try {
+      Files.createDirectories(dir);
+      Path tmp = Files.createTempFile(dir, site, ".tmp");
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(entry.newestId);
+        entry.fingerprints.writeTo(out);
+      }
+      try {
+        Files.move(tmp, dir.resolve(site + ".fp"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, dir.resolve(site + ".fp"), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException e) {
+      System.out.println("Failed to write the href snapshot for " + site + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * never 0, LongHashSet keeps that for empty slots
+   */
+  private static long fingerprint(String href) {
+    long fingerprint = Hashing.murmur3_128().hashString(href, StandardCharsets.UTF_8).asLong();
+    return fingerprint == 0 ? 1 : fingerprint;
+  }
+
+  // guarded by itself
+  private static class Site {
+    private final LongHashSet fingerprints = new LongHashSet();
+    // the newest posting id we have read from the database or the snapshot
+    private long newestId = 0;
+    // false until the first load, so adds before it don't count as loaded
+    private boolean loaded = false;
+  }
+}
@@ -10,6 +10,7 @@ import javax.persistence.*;
  * the job site we scraped or just errors we had scraping that job site. Be warned.
  */
 @Entity
+@Table(indexes = @Index(columnList = "jobSite, href"))
 public class JobPosting {
 
   @Id
@@ -4,6 +4,7 @@ import io.quarkus.hibernate.orm.panache.PanacheRepository;
 
 import javax.enterprise.context.ApplicationScoped;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @ApplicationScoped
@@ -21,4 +22,57 @@ public class JobPostingRepository implements PanacheRepository<JobPosting> {
     }
     return find("jobsite", jobSite).list();
   }
+
+  /**
+   * just the hrefs of the site's postings, without loading the postings themselves
+   */
+  List<String> findHrefsByJobSite(String jobSite) {
+    if (jobSite == null) {
+      return new ArrayList<>();
+    }
+    return getEntityManager()
+      .createQuery("select p.href from JobPosting p where p.jobSite = :jobSite", String.class)
+      .setParameter("jobSite", jobSite)
+      .getResultList();
+  }
+
+  /**
+   * id and href of the site's postings newer than the id, without loading the postings themselves
+   */
+  List<Object[]> findIdsAndHrefsAfter(String jobSite, long afterId) {
+    if (jobSite == null) {
+      return new ArrayList<>();
+    }
+    return getEntityManager()
+      .createQuery("select p.id, p.href from JobPosting p where p.jobSite = :jobSite and p.id > :afterId", Object[].class)
+      .setParameter("jobSite", jobSite)
+      .setParameter("afterId", afterId)
+      .getResultList();
+  }
+
+  /**
+   * Lock the site's href until the transaction ends. Whoever stores a posting for it under the lock
+   * can check for an existing one first without another instance storing the same one in between.
+   */
+  void lockHref(String jobSite, String href) {
+    getEntityManager()
+      .createNativeQuery("SELECT 1 FROM pg_advisory_xact_lock(hashtext(?1), hashtext(?2))")
+      .setParameter(1, jobSite)
+      .setParameter(2, href)
+      .getSingleResult();
+  }
+
+  /**
+   * which of the hrefs the site has postings for
+   */
+  List<String> findHrefsIn(String jobSite, Collection<String> hrefs) {
+    if (jobSite == null || hrefs.isEmpty()) {
+      return new ArrayList<>();
+    }
+    return getEntityManager()
+      .createQuery("select distinct p.href from JobPosting p where p.jobSite = :jobSite and p.href in :hrefs", String.class)
+      .setParameter("jobSite", jobSite)
+      .setParameter("hrefs", hrefs)
+      .getResultList();
+  }
 }
@@ -0,0 +1,136 @@
+package com.ajisaac.scrapebatch.dto;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A set of longs in one flat array, open addressing with linear probing. No boxing and no entry
+ * objects, so a value costs its 8 bytes divided by how full the table is. 0 marks an empty slot
+ * and can't be stored. Not thread safe.
+ */
+class LongHashSet {
+
+  private static final double MAX_LOAD = 0.75;
+  // the largest power of two an array can be
+  private static final int MAX_CAPACITY = 1 << 30;
+  // how many values fit in the largest table
+  static final int MAX_SIZE = (int) (MAX_CAPACITY * MAX_LOAD);
+
+  private long[] table;
+  private int size = 0;
+
+  LongHashSet() {
+    this(16);
+  }
+
+  LongHashSet(int expected) {
+    table = new long[capacityFor(expected)];
+  }
+
+  /**
+   * @return true if the value wasn't in the set yet
+   */
+  boolean add(long value) {
+    if (value == 0)
+      throw new IllegalArgumentException("0 can't be stored");
+    if (size + 1 > table.length * MAX_LOAD)
+      resize(capacityFor(size + 1L));
+    return insert(table, value);
+  }
+
+  boolean contains(long value) {
+    if (value == 0)
+      return false;
+    int mask = table.length - 1;
+    for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+      long found = table[i];
+      if (found == value)
+        return true;
+      if (found == 0)
+        return false;
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * bytes held by the table, the whole cost of the set
+   */
+  long sizeInBytes() {
+    return (long) table.length * Long.BYTES;
+  }
+
+  void writeTo(DataOutputStream out) throws IOException {
+    out.writeInt(size);
+    for (long value : table)
+      if (value != 0)
+        out.writeLong(value);
+  }
+
+  /**
+   * add the values written by writeTo to the ones already here
+   *
+   * @param maxCount the most values the input can hold, so a corrupt count fails before we make
+   *                 room for it
+   */
+  void readFrom(DataInputStream in, long maxCount) throws IOException {
+    int count = in.readInt();
+    if (count < 0 || count > maxCount || (long) size + count > MAX_SIZE)
+      throw new IOException("bad count " + count);
+    int capacity = capacityFor((long) size + count);
+    if (capacity > table.length)
+      resize(capacity);
+    for (int i = 0; i < count; i++) {
+      long value = in.readLong();
+      if (value != 0)
+        insert(table, value);
+    }
+  }
+
+  /**
+   * the smallest table, at least 16 slots, that holds the values without going over MAX_LOAD
+   */
+  private static int capacityFor(long values) {
+    if (values > MAX_SIZE)
+      throw new IllegalStateException("can't hold more than " + MAX_SIZE + " values");
+    long capacity = 16;
+    while (capacity * MAX_LOAD < values)
+      capacity <<= 1;
+    return (int) capacity;
+  }
+
+  private boolean insert(long[] into, long value) {
+    int mask = into.length - 1;
+    for (int i = slot(value, mask); ; i = (i + 1) & mask) {
+      long found = into[i];
+      if (found == value)
+        return false;
+      if (found == 0) {
+        into[i] = value;
+        if (into == table)
+          size++;
+        return true;
+      }
+    }
+  }
+
+  private void resize(int capacity) {
+    long[] old = table;
+    table = new long[capacity];
+    size = 0;
+    for (long value : old)
+      if (value != 0)
+        insert(table, value);
+  }
+
+  /**
+   * the values are hashes already, but mix them anyway so the low bits used for the slot are good
+   */
+  private static int slot(long value, int mask) {
+    long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
@@ -0,0 +1,72 @@
+package com.ajisaac.scrapebatch.dto;
+
+import com.ajisaac.scrapebatch.network.CacheValidators;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import javax.persistence.*;
+
+/**
+ * What we know about the last version of a page we fully processed, so the next run can ask the
+ * server whether it changed and skip it if it didn't.
+ */
+@Entity
+public class PageValidator {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.AUTO)
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private long id;
+
+  @Column(columnDefinition = "TEXT", nullable = false, unique = true)
+  private String url;
+  @Column(columnDefinition = "TEXT")
+  private String etag;
+  private String lastModified;
+  private String contentHash;
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public void setEtag(String etag) {
+    this.etag = etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  public void setLastModified(String lastModified) {
+    this.lastModified = lastModified;
+  }
+
+  public String getContentHash() {
+    return contentHash;
+  }
+
+  public void setContentHash(String contentHash) {
+    this.contentHash = contentHash;
+  }
+
+  @JsonIgnore
+  public CacheValidators toCacheValidators() {
+    return new CacheValidators(etag, lastModified);
+  }
+}
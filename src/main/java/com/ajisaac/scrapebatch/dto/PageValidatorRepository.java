@@ -0,0 +1,15 @@
+package com.ajisaac.scrapebatch.dto;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+
+import javax.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class PageValidatorRepository implements PanacheRepository<PageValidator> {
+  PageValidator findByUrl(String url) {
+    if (url == null) {
+      return null;
+    }
+    return find("url", url).firstResult();
+  }
+}
@@ -0,0 +1,55 @@
+package com.ajisaac.scrapebatch.dto;
+
+/**
+ * when the scheduler will next run a scrape job, and why that often
+ */
+public class ScheduledScrape {
+  private long scrapeJobId;
+  private String name;
+  private long intervalMinutes;
+  private long nextRunEpochMillis;
+  private Integer lastNewPostings;
+
+  public long getScrapeJobId() {
+    return scrapeJobId;
+  }
+
+  public void setScrapeJobId(long scrapeJobId) {
+    this.scrapeJobId = scrapeJobId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  public long getIntervalMinutes() {
+    return intervalMinutes;
+  }
+
+  public void setIntervalMinutes(long intervalMinutes) {
+    this.intervalMinutes = intervalMinutes;
+  }
+
+  public long getNextRunEpochMillis() {
+    return nextRunEpochMillis;
+  }
+
+  public void setNextRunEpochMillis(long nextRunEpochMillis) {
+    this.nextRunEpochMillis = nextRunEpochMillis;
+  }
+
+  /**
+   * non duplicate postings the last scheduled run found, null before the first one
+   */
+  public Integer getLastNewPostings() {
+    return lastNewPostings;
+  }
+
+  public void setLastNewPostings(Integer lastNewPostings) {
+    this.lastNewPostings = lastNewPostings;
+  }
+}
@@ -0,0 +1,78 @@
+package com.ajisaac.scrapebatch.dto;
+
+import java.util.List;
+
+/**
+ * where the current (or last) scrape all run is at
+ */
+public class ScrapeAllProgress {
+  private boolean running;
+  private int total;
+  private int queued;
+  private int finished;
+  private int skipped;
+  private List<String> inProgress;
+  private long elapsedSeconds;
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public void setRunning(boolean running) {
+    this.running = running;
+  }
+
+  public int getTotal() {
+    return total;
+  }
+
+  public void setTotal(int total) {
+    this.total = total;
+  }
+
+  public int getQueued() {
+    return queued;
+  }
+
+  public void setQueued(int queued) {
+    this.queued = queued;
+  }
+
+  public int getFinished() {
+    return finished;
+  }
+
+  public void setFinished(int finished) {
+    this.finished = finished;
+  }
+
+  /**
+   * jobs that couldn't be started, e.g. the job was already being scraped on its own
+   */
+  public int getSkipped() {
+    return skipped;
+  }
+
+  public void setSkipped(int skipped) {
+    this.skipped = skipped;
+  }
+
+  /**
+   * names of the jobs scraping right now
+   */
+  public List<String> getInProgress() {
+    return inProgress;
+  }
+
+  public void setInProgress(List<String> inProgress) {
+    this.inProgress = inProgress;
+  }
+
+  public long getElapsedSeconds() {
+    return elapsedSeconds;
+  }
+
+  public void setElapsedSeconds(long elapsedSeconds) {
+    this.elapsedSeconds = elapsedSeconds;
+  }
+}
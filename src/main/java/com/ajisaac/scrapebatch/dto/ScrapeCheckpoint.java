@@ -0,0 +1,82 @@
+package com.ajisaac.scrapebatch.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import javax.persistence.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * How far a scrape job got through a paginated site, written every so often while it runs and
+ * removed once it finishes. If the service goes down mid crawl the next run starts from here
+ * instead of from page one.
+ */
+@Entity
+public class ScrapeCheckpoint {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.AUTO)
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private long id;
+
+  @Column(nullable = false, unique = true)
+  private long scrapeJobId;
+  // the main page being worked on, 0 being the first page
+  private int pageIndex;
+  // postings of that page we haven't stored yet, one href per line
+  @Column(columnDefinition = "TEXT")
+  private String pendingHrefs;
+  private long updatedAt;
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public long getScrapeJobId() {
+    return scrapeJobId;
+  }
+
+  public void setScrapeJobId(long scrapeJobId) {
+    this.scrapeJobId = scrapeJobId;
+  }
+
+  public int getPageIndex() {
+    return pageIndex;
+  }
+
+  public void setPageIndex(int pageIndex) {
+    this.pageIndex = pageIndex;
+  }
+
+  public String getPendingHrefs() {
+    return pendingHrefs;
+  }
+
+  public void setPendingHrefs(String pendingHrefs) {
+    this.pendingHrefs = pendingHrefs;
+  }
+
+  /**
+   * epoch millis of the last write
+   */
+  public long getUpdatedAt() {
+    return updatedAt;
+  }
+
+  public void setUpdatedAt(long updatedAt) {
+    this.updatedAt = updatedAt;
+  }
+
+  @JsonIgnore
+  public List<String> getPendingHrefList() {
+    if (pendingHrefs == null || pendingHrefs.isBlank())
+      return List.of();
+    return Arrays.stream(pendingHrefs.split("\n")).filter(href -> !href.isBlank()).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,12 @@
+package com.ajisaac.scrapebatch.dto;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+
+import javax.enterprise.context.ApplicationScoped;
+
+@ApplicationScoped
+public class ScrapeCheckpointRepository implements PanacheRepository<ScrapeCheckpoint> {
+  ScrapeCheckpoint findByScrapeJobId(long scrapeJobId) {
+    return find("scrapeJobId", scrapeJobId).firstResult();
+  }
+}
@@ -1,7 +1,9 @@
 package com.ajisaac.scrapebatch.dto;
 
+import com.ajisaac.scrapebatch.network.Politeness;
 import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
 import com.ajisaac.scrapebatch.scrape.executors.MultiPageScrapingExecutor;
+import com.ajisaac.scrapebatch.scrape.executors.PipelineScrapingExecutor;
 import com.ajisaac.scrapebatch.scrape.executors.ScrapingExecutor;
 import com.ajisaac.scrapebatch.scrape.executors.SinglePageScrapingExecutor;
 import com.ajisaac.scrapebatch.scrape.scrapers.*;
@@ -41,6 +43,20 @@ public class ScrapeJob {
   private String jobType;
   private String sortType;
 
+  // overrides the site's politeness budget when set
+  private Double requestsPerMinute;
+  private Integer burst;
+
+  // how many description pages are fetched and parsed at once, the configured default when null
+  private Integer concurrency;
+
+  // scrape all runs higher priorities first, 0 when null
+  private Integer priority;
+
+  // href of the newest posting the last complete run saw, paging stops once we get back to it.
+  // Run state rather than part of the job, so it is left out of equals
+  private String watermarkHref;
+
   public long getId() {
     return id;
   }
@@ -121,6 +137,63 @@ public class ScrapeJob {
     return url;
   }
 
+  public Double getRequestsPerMinute() {
+    return requestsPerMinute;
+  }
+
+  public void setRequestsPerMinute(Double requestsPerMinute) {
+    this.requestsPerMinute = requestsPerMinute;
+  }
+
+  public Integer getBurst() {
+    return burst;
+  }
+
+  public void setBurst(Integer burst) {
+    this.burst = burst;
+  }
+
+  public Integer getConcurrency() {
+    return concurrency;
+  }
+
+  public void setConcurrency(Integer concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  public Integer getPriority() {
+    return priority;
+  }
+
+  public void setPriority(Integer priority) {
+    this.priority = priority;
+  }
+
+  public String getWatermarkHref() {
+    return watermarkHref;
+  }
+
+  public void setWatermarkHref(String watermarkHref) {
+    this.watermarkHref = watermarkHref;
+  }
+
+  /**
+   * the politeness budget for this job, the site default unless we override it
+   */
+  @JsonIgnore
+  public Politeness getPoliteness() {
+    ScrapingExecutorType type = getTypeFromScrapeJob();
+    Politeness siteDefault = type == null ? Politeness.DEFAULT : type.getPoliteness();
+    if (requestsPerMinute == null && burst == null)
+      return siteDefault;
+    if (requestsPerMinute != null && requestsPerMinute <= 0)
+      return siteDefault;
+
+    return new Politeness(
+      requestsPerMinute == null ? siteDefault.getRequestsPerMinute() : requestsPerMinute,
+      burst == null ? siteDefault.getBurst() : burst);
+  }
+
   /**
    * weak compare using name and site
    */
@@ -144,12 +217,16 @@ public class ScrapeJob {
       && Objects.equals(location, scrapeJob.location)
       && Objects.equals(jobType, scrapeJob.jobType)
       && Objects.equals(url, scrapeJob.url)
-      && Objects.equals(sortType, scrapeJob.sortType);
+      && Objects.equals(sortType, scrapeJob.sortType)
+      && Objects.equals(requestsPerMinute, scrapeJob.requestsPerMinute)
+      && Objects.equals(burst, scrapeJob.burst)
+      && Objects.equals(concurrency, scrapeJob.concurrency)
+      && Objects.equals(priority, scrapeJob.priority);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(id, site, name, query, location, remote, radius, jobType, sortType, url);
+    return Objects.hash(id, site, name, query, location, remote, radius, jobType, sortType, url, requestsPerMinute, burst, concurrency, priority);
   }
 
   @JsonIgnore
@@ -160,7 +237,7 @@ public class ScrapeJob {
     }
     switch (type) {
       case INDEED:
-        return new MultiPageScrapingExecutor(new IndeedScraper(this));
+        return multiPage(new IndeedScraper(this));
       case WWR:
         return new SinglePageScrapingExecutor(new WwrScraper(this));
       case REMOTIVEIO:
@@ -170,15 +247,21 @@ public class ScrapeJob {
       case REMOTEOKIO:
         return new SinglePageScrapingExecutor(new RemoteokioScraper(this));
       case SITEPOINT:
-        return new MultiPageScrapingExecutor(new SitepointScraper(this));
+        return multiPage(new SitepointScraper(this));
       case STACKOVERFLOW:
-        return new MultiPageScrapingExecutor(new StackoverflowScraper(this));
+        return multiPage(new StackoverflowScraper(this));
       case WORKINGNOMADS:
         return new SinglePageScrapingExecutor(new WorkingNomadsScraper(this));
     }
     return null;
   }
 
+  private static ScrapingExecutor multiPage(Scraper scraper) {
+    if (PipelineScrapingExecutor.ENABLED)
+      return new PipelineScrapingExecutor(scraper);
+    return new MultiPageScrapingExecutor(scraper);
+  }
+
   public ScrapingExecutorType getTypeFromScrapeJob() {
     try {
       return ScrapingExecutorType.valueOf(this.site);
@@ -0,0 +1,239 @@
+package com.ajisaac.scrapebatch.dto;
+
+import com.ajisaac.scrapebatch.scrape.executors.RunStats;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import javax.persistence.*;
+
+/**
+ * One scrape run, what it did and how long it spent doing it. Stored when the run is over however
+ * it ended, so throughput of each scraper can be followed from run to run.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "startedAt"))
+public class ScrapeRun {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.AUTO)
+  @JsonIgnoreProperties(ignoreUnknown = true)
+  private long id;
+
+  private long scrapeJobId;
+  private String scrapeJobName;
+  private String site;
+  private boolean replay;
+  // finished, stopped or failed
+  private String outcome;
+  // epoch millis
+  private long startedAt;
+  private long endedAt;
+
+  private long mainPages;
+  private long descriptionPages;
+  private long bytes;
+  private long postingsFound;
+  private long duplicatesRemoved;
+  private long failures;
+  private long postingsStored;
+
+  // summed over pages and postings, see RunStats
+  private long fetchMillis;
+  private long parseMillis;
+  private long persistMillis;
+  private long p50PageLatencyMillis;
+  private long p95PageLatencyMillis;
+
+  public static ScrapeRun of(ScrapeJob scrapeJob, RunStats stats, boolean replay, String outcome,
+                             long startedAt, long endedAt) {
+    var run = new ScrapeRun();
+    run.setScrapeJobId(scrapeJob.getId());
+    run.setScrapeJobName(scrapeJob.getName());
+    run.setSite(scrapeJob.getSite());
+    run.setReplay(replay);
+    run.setOutcome(outcome);
+    run.setStartedAt(startedAt);
+    run.setEndedAt(endedAt);
+    run.setMainPages(stats.getMainPages());
+    run.setDescriptionPages(stats.getDescriptionPages());
+    run.setBytes(stats.getBytes());
+    run.setPostingsFound(stats.getPostingsFound());
+    run.setDuplicatesRemoved(stats.getDuplicatesRemoved());
+    run.setFailures(stats.getFailures());
+    run.setPostingsStored(stats.getPostingsStored());
+    run.setFetchMillis(stats.getFetchMillis());
+    run.setParseMillis(stats.getParseMillis());
+    run.setPersistMillis(stats.getPersistMillis());
+    run.setP50PageLatencyMillis(stats.getPageLatencyPercentile(0.5));
+    run.setP95PageLatencyMillis(stats.getPageLatencyPercentile(0.95));
+    return run;
+  }
+
+  public long getDurationMillis() {
+    return Math.max(0, endedAt - startedAt);
+  }
+
+  public double getPostingsPerMinute() {
+    long duration = getDurationMillis();
+    return duration == 0 ? 0 : postingsStored * 60_000d / duration;
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public void setId(long id) {
+    this.id = id;
+  }
+
+  public long getScrapeJobId() {
+    return scrapeJobId;
+  }
+
+  public void setScrapeJobId(long scrapeJobId) {
+    this.scrapeJobId = scrapeJobId;
+  }
+
+  public String getScrapeJobName() {
+    return scrapeJobName;
+  }
+
+  public void setScrapeJobName(String scrapeJobName) {
+    this.scrapeJobName = scrapeJobName;
+  }
+
+  public String getSite() {
+    return site;
+  }
+
+  public void setSite(String site) {
+    this.site = site;
+  }
+
+  public boolean isReplay() {
+    return replay;
+  }
+
+  public void setReplay(boolean replay) {
+    this.replay = replay;
+  }
+
+  public String getOutcome() {
+    return outcome;
+  }
+
+  public void setOutcome(String outcome) {
+    this.outcome = outcome;
+  }
+
+  public long getStartedAt() {
+    return startedAt;
+  }
+
+  public void setStartedAt(long startedAt) {
+    this.startedAt = startedAt;
+  }
+
+  public long getEndedAt() {
+    return endedAt;
+  }
+
+  public void setEndedAt(long endedAt) {
+    this.endedAt = endedAt;
+  }
+
+  public long getMainPages() {
+    return mainPages;
+  }
+
+  public void setMainPages(long mainPages) {
+    this.mainPages = mainPages;
+  }
+
+  public long getDescriptionPages() {
+    return descriptionPages;
+  }
+
+  public void setDescriptionPages(long descriptionPages) {
+    this.descriptionPages = descriptionPages;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public void setBytes(long bytes) {
+    this.bytes = bytes;
+  }
+
+  public long getPostingsFound() {
+    return postingsFound;
+  }
+
+  public void setPostingsFound(long postingsFound) {
+    this.postingsFound = postingsFound;
+  }
+
+  public long getDuplicatesRemoved() {
+    return duplicatesRemoved;
+  }
+
+  public void setDuplicatesRemoved(long duplicatesRemoved) {
+    this.duplicatesRemoved = duplicatesRemoved;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  public void setFailures(long failures) {
+    this.failures = failures;
+  }
+
+  public long getPostingsStored() {
+    return postingsStored;
+  }
+
+  public void setPostingsStored(long postingsStored) {
+    this.postingsStored = postingsStored;
+  }
+
+  public long getFetchMillis() {
+    return fetchMillis;
+  }
+
+  public void setFetchMillis(long fetchMillis) {
+    this.fetchMillis = fetchMillis;
+  }
+
+  public long getParseMillis() {
+    return parseMillis;
+  }
+
+  public void setParseMillis(long parseMillis) {
+    this.parseMillis = parseMillis;
+  }
+
+  public long getPersistMillis() {
+    return persistMillis;
+  }
+
+  public void setPersistMillis(long persistMillis) {
+    this.persistMillis = persistMillis;
+  }
+
+  public long getP50PageLatencyMillis() {
+    return p50PageLatencyMillis;
+  }
+
+  public void setP50PageLatencyMillis(long p50PageLatencyMillis) {
+    this.p50PageLatencyMillis = p50PageLatencyMillis;
+  }
+
+  public long getP95PageLatencyMillis() {
+    return p95PageLatencyMillis;
+  }
+
+  public void setP95PageLatencyMillis(long p95PageLatencyMillis) {
+    this.p95PageLatencyMillis = p95PageLatencyMillis;
+  }
+}
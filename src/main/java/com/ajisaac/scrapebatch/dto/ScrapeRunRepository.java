@@ -0,0 +1,18 @@
+package com.ajisaac.scrapebatch.dto;
+
+import io.quarkus.hibernate.orm.panache.PanacheRepository;
+import io.quarkus.panache.common.Sort;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.List;
+
+@ApplicationScoped
+public class ScrapeRunRepository implements PanacheRepository<ScrapeRun> {
+  List<ScrapeRun> findLatest(int limit) {
+    return findAll(Sort.descending("startedAt")).page(0, limit).list();
+  }
+
+  List<ScrapeRun> findLiveSince(long startedAt) {
+    return list("startedAt >= ?1 and replay = false", Sort.ascending("startedAt"), startedAt);
+  }
+}
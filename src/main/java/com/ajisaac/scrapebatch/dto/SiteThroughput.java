@@ -0,0 +1,130 @@
+package com.ajisaac.scrapebatch.dto;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * how one site's live runs did over a stretch of time, to spot a scraper getting slower
+ */
+public class SiteThroughput {
+  private String site;
+  private int runs;
+  private int failedRuns;
+  private long postingsStored;
+  private long pages;
+  private long failures;
+  private double postingsPerMinute;
+  private long p95PageLatencyMillis;
+  private long lastRunAt;
+
+  /**
+   * sum up the site's runs, oldest first
+   */
+  public static SiteThroughput of(String site, List<ScrapeRun> runs) {
+    var throughput = new SiteThroughput();
+    throughput.setSite(site);
+    throughput.setRuns(runs.size());
+
+    long duration = 0;
+    for (ScrapeRun run : runs) {
+      if ("failed".equals(run.getOutcome()))
+        throughput.failedRuns++;
+      throughput.postingsStored += run.getPostingsStored();
+      throughput.pages += run.getMainPages() + run.getDescriptionPages();
+      throughput.failures += run.getFailures();
+      duration += run.getDurationMillis();
+      throughput.lastRunAt = Math.max(throughput.lastRunAt, run.getStartedAt());
+    }
+    throughput.setPostingsPerMinute(duration == 0 ? 0 : throughput.postingsStored * 60_000d / duration);
+
+    // the median run's p95, one run with a bad connection shouldn't move it
+    List<Long> p95s = runs.stream()
+      .filter(run -> run.getMainPages() + run.getDescriptionPages() > 0)
+      .map(ScrapeRun::getP95PageLatencyMillis)
+      .sorted()
+      .collect(Collectors.toList());
+    throughput.setP95PageLatencyMillis(p95s.isEmpty() ? 0 : p95s.get(p95s.size() / 2));
+    return throughput;
+  }
+
+  public String getSite() {
+    return site;
+  }
+
+  public void setSite(String site) {
+    this.site = site;
+  }
+
+  public int getRuns() {
+    return runs;
+  }
+
+  public void setRuns(int runs) {
+    this.runs = runs;
+  }
+
+  public int getFailedRuns() {
+    return failedRuns;
+  }
+
+  public void setFailedRuns(int failedRuns) {
+    this.failedRuns = failedRuns;
+  }
+
+  public long getPostingsStored() {
+    return postingsStored;
+  }
+
+  public void setPostingsStored(long postingsStored) {
+    this.postingsStored = postingsStored;
+  }
+
+  /**
+   * main and description pages we got
+   */
+  public long getPages() {
+    return pages;
+  }
+
+  public void setPages(long pages) {
+    this.pages = pages;
+  }
+
+  public long getFailures() {
+    return failures;
+  }
+
+  public void setFailures(long failures) {
+    this.failures = failures;
+  }
+
+  /**
+   * postings stored per minute spent running
+   */
+  public double getPostingsPerMinute() {
+    return postingsPerMinute;
+  }
+
+  public void setPostingsPerMinute(double postingsPerMinute) {
+    this.postingsPerMinute = postingsPerMinute;
+  }
+
+  /**
+   * the median over the runs of each run's p95 page latency
+   */
+  public long getP95PageLatencyMillis() {
+    return p95PageLatencyMillis;
+  }
+
+  public void setP95PageLatencyMillis(long p95PageLatencyMillis) {
+    this.p95PageLatencyMillis = p95PageLatencyMillis;
+  }
+
+  public long getLastRunAt() {
+    return lastRunAt;
+  }
+
+  public void setLastRunAt(long lastRunAt) {
+    this.lastRunAt = lastRunAt;
+  }
+}
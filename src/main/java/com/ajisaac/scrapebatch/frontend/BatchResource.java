@@ -1,8 +1,21 @@
 package com.ajisaac.scrapebatch.frontend;
 
+import com.ajisaac.scrapebatch.dto.DescriptionQueueStats;
+import com.ajisaac.scrapebatch.dto.ScheduledScrape;
+import com.ajisaac.scrapebatch.dto.ScrapeAllProgress;
 import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.dto.ScrapeRun;
+import com.ajisaac.scrapebatch.dto.SiteThroughput;
+import com.ajisaac.scrapebatch.network.FetchEngine;
+import com.ajisaac.scrapebatch.network.HostStats;
 import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
+import com.ajisaac.scrapebatch.scrape.executors.StageStats;
+import com.ajisaac.scrapebatch.service.BackfillService;
 import com.ajisaac.scrapebatch.service.BatchService;
+import com.ajisaac.scrapebatch.service.ScrapeAllService;
+import com.ajisaac.scrapebatch.service.DescriptionQueueWorker;
+import com.ajisaac.scrapebatch.service.LeaderElection;
+import com.ajisaac.scrapebatch.service.ScrapeScheduler;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
@@ -15,12 +28,27 @@ import java.util.*;
 public class BatchResource {
 
   private final BatchService batchJobService;
+  private final BackfillService backfillService;
+  private final ScrapeAllService scrapeAllService;
+  private final ScrapeScheduler scrapeScheduler;
+  private final DescriptionQueueWorker descriptionQueueWorker;
+  private final LeaderElection leaderElection;
 //  private final SimpMessagingTemplate template;
 
-  public BatchResource(BatchService batchJobService
+  public BatchResource(BatchService batchJobService,
+                       BackfillService backfillService,
+                       ScrapeAllService scrapeAllService,
+                       ScrapeScheduler scrapeScheduler,
+                       DescriptionQueueWorker descriptionQueueWorker,
+                       LeaderElection leaderElection
 //                       SimpMessagingTemplate template
   ) {
     this.batchJobService = batchJobService;
+    this.backfillService = backfillService;
+    this.scrapeAllService = scrapeAllService;
+    this.scrapeScheduler = scrapeScheduler;
+    this.descriptionQueueWorker = descriptionQueueWorker;
+    this.leaderElection = leaderElection;
 //    this.template = template;
   }
 
@@ -61,21 +89,138 @@ public class BatchResource {
     return sites;
   }
 
+  /**
+   * connection and latency numbers for every host we scrape
+   */
+  @GET
+  @Path("/hosts")
+  public List<HostStats> getHostStats() {
+    return FetchEngine.getInstance().getHostStats();
+  }
+
+  /**
+   * queue depths and throughput per stage of the pipelined scrapes that are running
+   */
+  @GET
+  @Path("/pipelines")
+  public Map<Long, List<StageStats>> getPipelineStats() {
+    return batchJobService.getPipelineStats();
+  }
+
+  /**
+   * resume=false ignores where an unfinished earlier run got to and starts from the first page
+   */
   @POST
   @Path("/scrape/{id}")
-  public Response doScrape(@PathParam("id") Long id) {
+  public Response doScrape(@PathParam("id") Long id, @QueryParam("resume") @DefaultValue("true") boolean resume) {
     if (batchJobService.isCurrentlyScraping(id))
-      return Response.ok("Already scraping this site.").build();
-    String errMsg = batchJobService.doScrape(id);
+      return Response.ok("Already scraping this job.").build();
+    String errMsg = batchJobService.doScrape(id, resume);
     if (errMsg == null)
       return Response.ok("Batch scrape job " + id + " submitted").build();
     return Response.status(400).entity(errMsg).build();
   }
 
+  /**
+   * scrape the job again from the local page archive, nothing goes over the network
+   */
+  @POST
+  @Path("/replay/{id}")
+  public Response doReplay(@PathParam("id") Long id) {
+    if (batchJobService.isCurrentlyScraping(id))
+      return Response.ok("Already scraping this job.").build();
+    String errMsg = batchJobService.doReplay(id);
+    if (errMsg == null)
+      return Response.ok("Replay of scrape job " + id + " submitted").build();
+    return Response.status(400).entity(errMsg).build();
+  }
+
+  /**
+   * re-parse every stored posting of the job's site from the archived description pages
+   */
+  @POST
+  @Path("/backfill/{id}")
+  public Response doBackfill(@PathParam("id") Long id) {
+    String errMsg = backfillService.backfill(id);
+    if (errMsg == null)
+      return Response.ok("Backfill of scrape job " + id + " submitted").build();
+    return Response.status(400).entity(errMsg).build();
+  }
+
   @POST
   @Path("/stop-scrape/{id}")
   public Response stopScrape(@PathParam("id") Long id) {
     String msg = batchJobService.stopScraping(id);
     return Response.status(200).entity(msg).build();
   }
+
+  /**
+   * scrape every job, highest priority first, under the global and per site caps
+   */
+  @POST
+  @Path("/scrape-all")
+  public Response scrapeAll() {
+    String errMsg = scrapeAllService.scrapeAll();
+    if (errMsg == null)
+      return Response.ok("Scrape all submitted").build();
+    return Response.status(400).entity(errMsg).build();
+  }
+
+  @GET
+  @Path("/scrape-all")
+  public ScrapeAllProgress getScrapeAllProgress() {
+    return scrapeAllService.getProgress();
+  }
+
+  /**
+   * when each scrape job runs next, empty unless scrape.schedule.enabled is set
+   */
+  @GET
+  @Path("/schedule")
+  public List<ScheduledScrape> getSchedule() {
+    return scrapeScheduler.getSchedule();
+  }
+
+  /**
+   * what the latest scrape runs did and how long they took, newest first
+   */
+  @GET
+  @Path("/runs")
+  public List<ScrapeRun> getScrapeRuns(@QueryParam("limit") @DefaultValue("50") int limit) {
+    return batchJobService.getScrapeRuns(limit);
+  }
+
+  /**
+   * postings per minute, p95 page latency and the like per site, over the live runs of the last days
+   */
+  @GET
+  @Path("/runs/sites")
+  public List<SiteThroughput> getSiteThroughput(@QueryParam("days") @DefaultValue("7") int days) {
+    return batchJobService.getSiteThroughput(days);
+  }
+
+  /**
+   * whether this instance is the one planning scheduled and scrape all runs
+   */
+  @GET
+  @Path("/leader")
+  public boolean isLeader() {
+    return leaderElection.isLeader();
+  }
+
+  /**
+   * the description tasks shared by every instance, empty unless scrape.queue.enabled is set
+   */
+  @GET
+  @Path("/description-queue")
+  public DescriptionQueueStats getDescriptionQueueStats() {
+    return descriptionQueueWorker.getStats();
+  }
+
+  @POST
+  @Path("/stop-scrape-all")
+  public Response stopScrapeAll() {
+    String msg = scrapeAllService.stopAll();
+    return Response.status(200).entity(msg).build();
+  }
 }
@@ -0,0 +1,86 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+
+/**
+ * Keeps a copy of a streamed page as the parser reads it and archives the copy once the stream is
+ * closed, so streaming a page doesn't mean losing it from the archive. Only a page that was read to
+ * the end is archived, one the parser gave up on, or that failed or was cut off, is not.
+ */
+class ArchivingInputStream extends FilterInputStream {
+
+  private final URI uri;
+  private final Charset charset;
+  private final PageArchive archive;
+  private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+  private boolean failed = false;
+  private boolean ended = false;
+
+  ArchivingInputStream(InputStream in, URI uri, Charset charset, PageArchive archive) {
+    super(in);
+    this.uri = uri;
+    this.charset = charset;
+    this.archive = archive;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b;
+    try {
+      b = super.read();
+    } catch (IOException e) {
+      failed = true;
+      throw e;
+    }
+    if (b >= 0)
+      copy.write(b);
+    else
+      ended = true;
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n;
+    try {
+      n = super.read(b, off, len);
+    } catch (IOException e) {
+      failed = true;
+      throw e;
+    }
+    if (n > 0)
+      copy.write(b, off, n);
+    else if (n < 0)
+      ended = true;
+    return n;
+  }
+
+  /**
+   * skipped bytes would leave a hole in the copy
+   */
+  @Override
+  public long skip(long n) throws IOException {
+    failed = true;
+    return super.skip(n);
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (ended && !failed)
+        archive.store(uri, new String(copy.toByteArray(), charset));
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.io.IOException;
+
+/**
+ * the page decoded to more than we are willing to hold, fetching it again won't help
+ */
+class BodyTooLargeException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  BodyTooLargeException(long maxBytes) {
+    super("page is larger than " + maxBytes + " bytes");
+  }
+}
@@ -0,0 +1,137 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops a parser from reading past a size limit or for longer than a deadline, so one huge or
+ * slow page can't eat the heap or pin a thread. The clock starts at the first read, not when the
+ * stream is created, since pages may sit in the in-flight window for a while before we parse them.
+ *
+ * A server that sends the headers and then stalls would leave the parser blocked inside a read, so
+ * the deadline is also enforced from outside: when it passes the connection is closed under the
+ * parser, which makes the blocked read fail.
+ */
+class BoundedInputStream extends FilterInputStream {
+
+  private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+  private final Closeable connection;
+  private final long maxBytes;
+  private final long timeoutNanos;
+  private long deadline = 0;
+  private long count = 0;
+  private volatile ScheduledFuture<?> expiry;
+  private volatile boolean expired = false;
+
+  /**
+   * @param connection what to close when the deadline passes, the raw response body rather than a
+   *                   decoder reading it, a decoder may not be closed while another thread is in it
+   */
+  BoundedInputStream(InputStream in, Closeable connection, long maxBytes, Duration timeout) {
+    super(in);
+    this.connection = connection;
+    this.maxBytes = maxBytes;
+    this.timeoutNanos = timeout.toNanos();
+  }
+
+  @Override
+  public int read() throws IOException {
+    check(1);
+    int b;
+    try {
+      b = super.read();
+    } catch (IOException e) {
+      throw expired ? timedOut() : e;
+    }
+    if (b >= 0)
+      count++;
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    check(len);
+    int n;
+    try {
+      n = super.read(b, off, (int) Math.min(len, maxBytes - count + 1));
+    } catch (IOException e) {
+      throw expired ? timedOut() : e;
+    }
+    if (n > 0)
+      count += n;
+    return n;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    check(n);
+    long skipped;
+    try {
+      skipped = super.skip(n);
+    } catch (IOException e) {
+      throw expired ? timedOut() : e;
+    }
+    count += skipped;
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    var pending = expiry;
+    if (pending != null)
+      pending.cancel(false);
+    super.close();
+  }
+
+  /**
+   * most pages are read well within their deadline, cancelled ones are dropped right away instead
+   * of sitting in the queue until they would have run
+   */
+  private static ScheduledThreadPoolExecutor newTimer() {
+    var timer = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "parse-deadline");
+      t.setDaemon(true);
+      return t;
+    });
+    timer.setRemoveOnCancelPolicy(true);
+    return timer;
+  }
+
+  private void check(long wanted) throws IOException {
+    long now = System.nanoTime();
+    if (deadline == 0) {
+      deadline = now + timeoutNanos;
+      expiry = TIMER.schedule(this::expire, timeoutNanos, TimeUnit.NANOSECONDS);
+    } else if (expired || now - deadline > 0) {
+      throw timedOut();
+    }
+
+    if (count > maxBytes)
+      throw new BodyTooLargeException(maxBytes);
+  }
+
+  private void expire() {
+    expired = true;
+    try {
+      connection.close();
+    } catch (IOException e) {
+      // the read it was meant to stop fails either way
+    }
+  }
+
+  private IOException timedOut() {
+    return new IOException("page took longer than " + Duration.ofNanos(timeoutNanos).toSeconds() + " seconds to read");
+  }
+}
@@ -0,0 +1,28 @@
+package com.ajisaac.scrapebatch.network;
+
+/**
+ * The ETag and Last-Modified values a server gave us for a page, sent back on the next request so
+ * the server can answer 304 Not Modified if nothing changed.
+ */
+public class CacheValidators {
+
+  private final String etag;
+  private final String lastModified;
+
+  public CacheValidators(String etag, String lastModified) {
+    this.etag = etag;
+    this.lastModified = lastModified;
+  }
+
+  public String getEtag() {
+    return etag;
+  }
+
+  public String getLastModified() {
+    return lastModified;
+  }
+
+  public boolean isEmpty() {
+    return (etag == null || etag.isBlank()) && (lastModified == null || lastModified.isBlank());
+  }
+}
@@ -0,0 +1,118 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Shared between a scrape run and every request it makes, so stopping the run reaches all the way
+ * down: requests waiting on the politeness budget or a connection slot give up, requests on the
+ * wire are aborted, and pages being parsed are closed under the parser.
+ */
+public class CancellationToken {
+
+  /**
+   * for callers that never cancel, cancel() does nothing on it
+   */
+  public static final CancellationToken NONE = new CancellationToken(false);
+
+  private final boolean cancellable;
+  private final Set<Runnable> callbacks = new LinkedHashSet<>();
+  private volatile boolean cancelled = false;
+
+  public CancellationToken() {
+    this(true);
+  }
+
+  private CancellationToken(boolean cancellable) {
+    this.cancellable = cancellable;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Cancel and run every callback registered so far. Callbacks run on the cancelling thread but
+   * outside the token's lock, a callback can complete a future whose handlers remove callbacks or
+   * register new ones. A callback removed while cancel() is going may still run.
+   */
+  public void cancel() {
+    List<Runnable> toRun;
+    synchronized (this) {
+      if (!cancellable || cancelled)
+        return;
+      cancelled = true;
+      toRun = new ArrayList<>(callbacks);
+      callbacks.clear();
+    }
+    // one callback failing mustn't keep the rest from running
+    RuntimeException failure = null;
+    for (Runnable callback : toRun) {
+      try {
+        callback.run();
+      } catch (RuntimeException e) {
+        if (failure == null)
+          failure = e;
+      }
+    }
+    if (failure != null)
+      throw failure;
+  }
+
+  /**
+   * run the callback when the token is cancelled, right away if it already is
+   *
+   * @return removes the callback again, call it once whatever the callback guards is done
+   */
+  public Runnable onCancel(Runnable callback) {
+    synchronized (this) {
+      if (!cancelled) {
+        if (!cancellable)
+          return () -> {
+          };
+        callbacks.add(callback);
+        return () -> remove(callback);
+      }
+    }
+    callback.run();
+    return () -> {
+    };
+  }
+
+  private synchronized void remove(Runnable callback) {
+    callbacks.remove(callback);
+  }
+
+  /**
+   * A future that completes with ifCancelled as soon as the token is cancelled, or like the given
+   * future otherwise. A result that shows up after we gave up on it is closed if it can be.
+   */
+  public <T> CompletableFuture<T> bind(CompletableFuture<T> future, Supplier<T> ifCancelled) {
+    if (!cancellable)
+      return future;
+
+    var bound = new CompletableFuture<T>();
+    Runnable remove = onCancel(() -> bound.complete(ifCancelled.get()));
+    future.whenComplete((result, ex) -> {
+      remove.run();
+      boolean delivered = ex == null ? bound.complete(result) : bound.completeExceptionally(ex);
+      if (!delivered && result instanceof Closeable)
+        closeQuietly((Closeable) result);
+    });
+    return bound;
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // nobody is waiting on it anymore
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a response body into a String, inflating gzip or deflate encoded bodies chunk by chunk as
+ * they come off the wire. The http client doesn't do this for us. Counts the bytes we received and
+ * the bytes they decoded to so we can see how much compression is saving per host.
+ */
+class DecodingBodySubscriber implements HttpResponse.BodySubscriber<String> {
+
+  static final String ACCEPT_ENCODING = "gzip, deflate";
+
+  private static final int GZIP_FEXTRA = 4;
+  private static final int GZIP_FNAME = 8;
+  private static final int GZIP_FCOMMENT = 16;
+  private static final int GZIP_FHCRC = 2;
+
+  private final CompletableFuture<String> body = new CompletableFuture<>();
+  private final Charset charset;
+  private final HostStats stats;
+  private final long maxBytes;
+  private final Inflater inflater;
+  private final boolean gzip;
+  private final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+  private final byte[] chunk = new byte[8192];
+
+  // gzip puts a variable length header in front of the deflate data, we hold bytes here until
+  // the whole header has arrived
+  private ByteArrayOutputStream gzipHeader;
+  private long wireBytes = 0;
+  private boolean done = false;
+  private Flow.Subscription subscription;
+
+  private DecodingBodySubscriber(String encoding, Charset charset, HostStats stats, long maxBytes) {
+    this.charset = charset;
+    this.stats = stats;
+    this.maxBytes = maxBytes;
+    this.gzip = "gzip".equals(encoding) || "x-gzip".equals(encoding);
+    if (gzip) {
+      this.inflater = new Inflater(true);
+      this.gzipHeader = new ByteArrayOutputStream();
+    } else if ("deflate".equals(encoding)) {
+      this.inflater = new Inflater();
+    } else {
+      this.inflater = null;
+    }
+  }
+
+  /**
+   * @param maxBytes the body is abandoned once it decodes to more than this
+   */
+  static HttpResponse.BodyHandler<String> handler(HostStats stats, long maxBytes) {
+    return info -> new DecodingBodySubscriber(encodingOf(info.headers()), charsetOf(info.headers()), stats, maxBytes);
+  }
+
+  @Override
+  public CompletionStage<String> getBody() {
+    return body;
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscription.request(Long.MAX_VALUE);
+  }
+
+  @Override
+  public void onNext(List<ByteBuffer> items) {
+    if (done)
+      return;
+    try {
+      for (ByteBuffer item : items) {
+        wireBytes += item.remaining();
+        byte[] bytes = new byte[item.remaining()];
+        item.get(bytes);
+        decode(bytes);
+        if (decoded.size() > maxBytes)
+          throw new BodyTooLargeException(maxBytes);
+      }
+    } catch (IOException | DataFormatException e) {
+      subscription.cancel();
+      finish();
+      body.completeExceptionally(e);
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    finish();
+    body.completeExceptionally(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    finish();
+    body.complete(new String(decoded.toByteArray(), charset));
+  }
+
+  private void decode(byte[] bytes) throws IOException, DataFormatException {
+    if (inflater == null) {
+      decoded.write(bytes);
+      return;
+    }
+
+    if (gzipHeader != null) {
+      gzipHeader.write(bytes);
+      byte[] pending = gzipHeader.toByteArray();
+      int headerLength = gzipHeaderLength(pending);
+      if (headerLength < 0)
+        return;
+      gzipHeader = null;
+      bytes = Arrays.copyOfRange(pending, headerLength, pending.length);
+    }
+
+    if (inflater.finished())
+      return; // gzip trailer, we don't check the crc
+
+    inflater.setInput(bytes);
+    while (true) {
+      int n = inflater.inflate(chunk);
+      if (n > 0) {
+        decoded.write(chunk, 0, n);
+      } else if (inflater.finished() || inflater.needsInput()) {
+        return;
+      } else if (inflater.needsDictionary()) {
+        throw new IOException("deflate stream needs a preset dictionary");
+      }
+    }
+  }
+
+  /**
+   * length of the gzip member header at the start of the bytes, -1 if we don't have all of it yet
+   */
+  private static int gzipHeaderLength(byte[] b) throws IOException {
+    if (b.length < 10)
+      return -1;
+    if ((b[0] & 0xff) != 0x1f || (b[1] & 0xff) != 0x8b || b[2] != 8)
+      throw new IOException("not a gzip stream");
+
+    int flags = b[3] & 0xff;
+    int pos = 10;
+    if ((flags & GZIP_FEXTRA) != 0) {
+      if (b.length < pos + 2)
+        return -1;
+      pos += 2 + ((b[pos] & 0xff) | ((b[pos + 1] & 0xff) << 8));
+    }
+    if ((flags & GZIP_FNAME) != 0) {
+      pos = skipZeroTerminated(b, pos);
+      if (pos < 0)
+        return -1;
+    }
+    if ((flags & GZIP_FCOMMENT) != 0) {
+      pos = skipZeroTerminated(b, pos);
+      if (pos < 0)
+        return -1;
+    }
+    if ((flags & GZIP_FHCRC) != 0)
+      pos += 2;
+    return pos <= b.length ? pos : -1;
+  }
+
+  private static int skipZeroTerminated(byte[] b, int pos) {
+    for (int i = pos; i < b.length; i++)
+      if (b[i] == 0)
+        return i + 1;
+    return -1;
+  }
+
+  private void finish() {
+    if (done)
+      return;
+    done = true;
+    if (inflater != null)
+      inflater.end();
+    stats.transferred(wireBytes, decoded.size());
+  }
+
+  static String encodingOf(HttpHeaders headers) {
+    return headers.firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+  }
+
+  static Charset charsetOf(HttpHeaders headers) {
+    String contentType = headers.firstValue("Content-Type").orElse("");
+    for (String param : contentType.split(";")) {
+      String p = param.trim();
+      if (p.toLowerCase(Locale.ROOT).startsWith("charset=")) {
+        String name = p.substring("charset=".length()).replace("\"", "").trim();
+        try {
+          return Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+          break;
+        }
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+}
@@ -0,0 +1,55 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that is only opened on the first read.
+ */
+class DeferredInputStream extends InputStream {
+
+  interface Opener {
+    InputStream open() throws IOException;
+  }
+
+  private final Opener opener;
+  private final InputStream underlying;
+  private InputStream in;
+
+  /**
+   * @param underlying what to close if we are closed before ever being opened
+   */
+  DeferredInputStream(Opener opener, InputStream underlying) {
+    this.opener = opener;
+    this.underlying = underlying;
+  }
+
+  private InputStream in() throws IOException {
+    if (in == null)
+      in = opener.open();
+    return in;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return in().read();
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    return in().read(b, off, len);
+  }
+
+  @Override
+  public int available() throws IOException {
+    return in == null ? 0 : in.available();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (in != null)
+      in.close();
+    else
+      underlying.close();
+  }
+}
@@ -0,0 +1,419 @@
+package com.ajisaac.scrapebatch.network;
+
+import com.google.common.io.CountingInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Long lived http client shared by every scraper. Reusing one client means we keep connections
+ * (and HTTP/2 streams) open between pages instead of doing a fresh TLS handshake for each one.
+ * Each host gets an adaptive cap on how many requests we have open against it at once, see
+ * HostLimiter.
+ */
+public class FetchEngine {
+
+  private static final FetchEngine INSTANCE = new FetchEngine(FetchSettings.fromConfig());
+
+  private final FetchSettings settings;
+  private final HttpClient httpClient;
+  private final Map<String, HostLimiter> hostLimiters = new ConcurrentHashMap<>();
+  private final Map<String, HostStats> hostStats = new ConcurrentHashMap<>();
+
+  public FetchEngine(FetchSettings settings) {
+    this.settings = settings;
+    HttpClient.Builder builder =
+      HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .connectTimeout(settings.getConnectTimeout());
+    // responses are handled on a virtual thread each rather than the client's own cached pool
+    if (ScrapeThreads.isVirtual())
+      builder.executor(ScrapeThreads.newExecutor("fetch", 1));
+    this.httpClient = builder.build();
+  }
+
+  public static FetchEngine getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * fetch the page, blocking until we have it or the request failed
+   */
+  public FetchResult fetch(URI uri) {
+    return fetch(uri, null);
+  }
+
+  /**
+   * fetch the page under the given politeness budget, blocking until we have it
+   */
+  public FetchResult fetch(URI uri, Politeness politeness) {
+    return fetch(uri, politeness, null);
+  }
+
+  /**
+   * conditional fetch, the server may answer 304 Not Modified if the validators still match
+   */
+  public FetchResult fetch(URI uri, Politeness politeness, CacheValidators validators) {
+    try {
+      return fetchAsync(uri, politeness, validators).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return FetchResult.failed(uri, 0);
+    } catch (ExecutionException e) {
+      return FetchResult.failed(uri, 0);
+    }
+  }
+
+  public CompletableFuture<FetchResult> fetchAsync(URI uri) {
+    return fetchAsync(uri, null);
+  }
+
+  public CompletableFuture<FetchResult> fetchAsync(URI uri, Politeness politeness) {
+    return fetchAsync(uri, politeness, null);
+  }
+
+  /**
+   * start fetching the page. The request first waits for the host's politeness budget to allow it,
+   * then for a free connection slot. Transient failures are retried with backoff, see RetryPolicy.
+   * The future never completes exceptionally, failures come back as a failed FetchResult.
+   *
+   * @param politeness the budget for the host, null to use whatever the host already has
+   * @param validators sent as If-None-Match/If-Modified-Since when not null
+   */
+  public CompletableFuture<FetchResult> fetchAsync(URI uri, Politeness politeness, CacheValidators validators) {
+    return fetchAsync(uri, politeness, validators, CancellationToken.NONE);
+  }
+
+  /**
+   * fetchAsync that gives up as soon as the token is cancelled, the future then holds a failed
+   * FetchResult and the request is aborted if it was already on the wire
+   */
+  public CompletableFuture<FetchResult> fetchAsync(URI uri, Politeness politeness, CacheValidators validators,
+                                                   CancellationToken token) {
+    String host = hostOf(uri);
+    HostLimiter limiter = limiterFor(host);
+    HostStats stats = getStats(host);
+
+    var result = withRetries(token, stats, FetchResult::isRetryable, () ->
+      PolitenessScheduler.getInstance().acquire(host, politeness)
+        .thenCompose(ready -> limiter.acquire())
+        .thenCompose(permit -> send(uri, validators, host, limiter, stats, token)));
+    return token.bind(result, () -> FetchResult.failed(uri, 0));
+  }
+
+  /**
+   * send the request once we hold a connection slot for the host, the slot is given back when the
+   * response is in
+   */
+  private CompletableFuture<FetchResult> send(URI uri, CacheValidators validators, String host,
+                                              HostLimiter limiter, HostStats stats, CancellationToken token) {
+    HttpRequest request;
+    try {
+      request = buildRequest(uri, validators);
+    } catch (IllegalArgumentException e) {
+      limiter.release();
+      return CompletableFuture.completedFuture(FetchResult.failed(uri, 0));
+    }
+    if (token.isCancelled()) {
+      limiter.release();
+      return CompletableFuture.completedFuture(FetchResult.failed(uri, 0));
+    }
+
+    long start = System.nanoTime();
+    stats.requestStarted();
+    var pending = httpClient.sendAsync(request, DecodingBodySubscriber.handler(stats, settings.getMaxBodyBytes()));
+    Runnable abort = token.onCancel(() -> pending.cancel(true));
+    return pending
+      .handle((response, ex) -> {
+        abort.run();
+        long latency = elapsedMillis(start);
+        if (ex != null && token.isCancelled()) {
+          // we walked away, that says nothing about the host
+          finish(limiter, stats, latency, false);
+          return FetchResult.failed(uri, latency);
+        }
+        if (ex != null) {
+          limiter.onBackoff();
+          finish(limiter, stats, latency, true);
+          return FetchResult.failed(uri, latency, isTransient(ex));
+        }
+
+        int status = response.statusCode();
+        adapt(host, limiter, stats, response, latency);
+        finish(limiter, stats, latency, status >= 400);
+
+        if (status >= 200 && status < 300)
+          PageArchive.getInstance().store(uri, response.body());
+        return new FetchResult(uri, status, response.body(), latency, validatorsOf(response));
+      });
+  }
+
+  /**
+   * Like fetchAsync, but the future completes as soon as the headers are in and the body is left
+   * on the wire for the caller to stream into a parser. The body is decoded, capped at the max
+   * body size and has to be read within the parse timeout. When archiving is on, a page read to the
+   * end is archived as it is closed, like a buffered one. The host's connection slot is given
+   * back once the headers are in: a page can sit unread behind slower ones for a while, and a
+   * retry stuck behind it must not wait on a slot it holds. The caller's in-flight window keeps
+   * the number of unread pages bounded instead.
+   */
+  public CompletableFuture<StreamedPage> fetchStreamAsync(URI uri, Politeness politeness) {
+    return fetchStreamAsync(uri, politeness, CancellationToken.NONE);
+  }
+
+  /**
+   * fetchStreamAsync that gives up as soon as the token is cancelled. A page already handed out is
+   * closed on cancel, which makes a parser reading it fail right away.
+   */
+  public CompletableFuture<StreamedPage> fetchStreamAsync(URI uri, Politeness politeness, CancellationToken token) {
+    String host = hostOf(uri);
+    HostLimiter limiter = limiterFor(host);
+    HostStats stats = getStats(host);
+
+    var page = withRetries(token, stats, StreamedPage::isRetryable, () ->
+      PolitenessScheduler.getInstance().acquire(host, politeness)
+        .thenCompose(ready -> limiter.acquire())
+        .thenCompose(permit -> sendStreaming(uri, host, limiter, stats, token)));
+    return token.bind(page, () -> StreamedPage.failed(uri, 0));
+  }
+
+  /**
+   * Send the request again while it keeps failing in a way that might go away, waiting a little
+   * longer each time. Each attempt waits for the politeness budget again, so a host that told us
+   * to back off with Retry-After is left alone for as long as it asked.
+   */
+  private <T> CompletableFuture<T> withRetries(CancellationToken token, HostStats stats, Predicate<T> retryable,
+                                               Supplier<CompletableFuture<T>> request) {
+    return attempt(token, stats, retryable, request, 1);
+  }
+
+  private <T> CompletableFuture<T> attempt(CancellationToken token, HostStats stats, Predicate<T> retryable,
+                                           Supplier<CompletableFuture<T>> request, int attempt) {
+    RetryPolicy policy = settings.getRetryPolicy();
+    return request.get().thenCompose(result -> {
+      if (attempt >= policy.getMaxAttempts() || !retryable.test(result) || token.isCancelled())
+        return CompletableFuture.completedFuture(result);
+
+      stats.retried();
+      Executor later = CompletableFuture.delayedExecutor(policy.backoffMillis(attempt), TimeUnit.MILLISECONDS);
+      return CompletableFuture.supplyAsync(() -> attempt + 1, later)
+        .thenCompose(next -> token.isCancelled()
+          ? CompletableFuture.completedFuture(result)
+          : attempt(token, stats, retryable, request, next));
+    });
+  }
+
+  private CompletableFuture<StreamedPage> sendStreaming(URI uri, String host, HostLimiter limiter, HostStats stats,
+                                                        CancellationToken token) {
+    HttpRequest request;
+    try {
+      request = buildRequest(uri, null);
+    } catch (IllegalArgumentException e) {
+      limiter.release();
+      return CompletableFuture.completedFuture(StreamedPage.failed(uri, 0));
+    }
+    if (token.isCancelled()) {
+      limiter.release();
+      return CompletableFuture.completedFuture(StreamedPage.failed(uri, 0));
+    }
+
+    long start = System.nanoTime();
+    stats.requestStarted();
+    var pending = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+    Runnable abort = token.onCancel(() -> pending.cancel(true));
+    return pending
+      .handle((response, ex) -> {
+        abort.run();
+        long latency = elapsedMillis(start);
+        if (ex != null && token.isCancelled()) {
+          finish(limiter, stats, latency, false);
+          return StreamedPage.failed(uri, 0);
+        }
+        if (ex != null) {
+          limiter.onBackoff();
+          finish(limiter, stats, latency, true);
+          return StreamedPage.retryable(uri);
+        }
+
+        int status = response.statusCode();
+        adapt(host, limiter, stats, response, latency);
+        if (status < 200 || status >= 300) {
+          closeQuietly(response.body());
+          finish(limiter, stats, latency, status >= 400);
+          return StreamedPage.failed(uri, status);
+        }
+
+        finish(limiter, stats, latency, false);
+        var wire = new CountingInputStream(response.body());
+        var decoded = new CountingInputStream(decoding(wire, DecodingBodySubscriber.encodingOf(response.headers())));
+        InputStream archived = decoded;
+        if (PageArchive.getInstance().isEnabled())
+          archived = new ArchivingInputStream(decoded, uri, DecodingBodySubscriber.charsetOf(response.headers()),
+            PageArchive.getInstance());
+        var body = new BoundedInputStream(archived, response.body(), settings.getMaxBodyBytes(), settings.getParseTimeout());
+        Runnable[] forget = {() -> {
+        }};
+        var page = new StreamedPage(uri, status, body, () -> {
+          forget[0].run();
+          stats.transferred(wire.getCount(), decoded.getCount());
+        }, latency, decoded::getCount);
+        // closing the page under a parser that is still reading it makes the parser give up
+        forget[0] = token.onCancel(page::close);
+        return page;
+      });
+  }
+
+  /**
+   * feed the host's answer back into its adaptive connection limit
+   */
+  private void adapt(String host, HostLimiter limiter, HostStats stats, HttpResponse<?> response, long latency) {
+    int status = response.statusCode();
+    if (isThrottled(status)) {
+      limiter.onBackoff();
+      stats.throttled();
+      retryAfter(response).ifPresent(pause -> PolitenessScheduler.getInstance().pauseHost(host, pause));
+    } else if (status < 500) {
+      limiter.onSuccess(latency);
+    }
+  }
+
+  /**
+   * GZIPInputStream reads the gzip header as soon as it's built, which would block the http
+   * client's thread waiting on the body, so the decoder is only built on the parser's first read
+   */
+  private static InputStream decoding(InputStream in, String encoding) {
+    switch (encoding) {
+      case "gzip":
+      case "x-gzip":
+        return new DeferredInputStream(() -> new GZIPInputStream(in), in);
+      case "deflate":
+        return new InflaterInputStream(in);
+      default:
+        return in;
+    }
+  }
+
+  private static void closeQuietly(InputStream in) {
+    try {
+      in.close();
+    } catch (IOException e) {
+      // the connection is going away either way
+    }
+  }
+
+  private void finish(HostLimiter limiter, HostStats stats, long latency, boolean failed) {
+    stats.requestFinished(latency, failed);
+    stats.setConcurrencyLimit(limiter.getLimit());
+    limiter.release();
+  }
+
+  /**
+   * anything that went wrong on the connection is worth another try, except a page that was
+   * simply too big
+   */
+  private static boolean isTransient(Throwable ex) {
+    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    return !(cause instanceof BodyTooLargeException);
+  }
+
+  private static boolean isThrottled(int status) {
+    return status == 429 || status == 503;
+  }
+
+  /**
+   * Retry-After comes either as a number of seconds or as an http date
+   */
+  static Optional<Duration> retryAfter(HttpResponse<?> response) {
+    Optional<String> header = response.headers().firstValue("Retry-After");
+    if (header.isEmpty())
+      return Optional.empty();
+
+    String value = header.get().trim();
+    try {
+      return Optional.of(Duration.ofSeconds(Long.parseLong(value)));
+    } catch (NumberFormatException e) {
+      // not seconds, try the date form
+    }
+    try {
+      var until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+      return Optional.of(Duration.between(ZonedDateTime.now(until.getZone()), until));
+    } catch (DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * connection and latency numbers for every host we have talked to
+   */
+  public List<HostStats> getHostStats() {
+    List<HostStats> stats = new ArrayList<>(hostStats.values());
+    stats.sort(Comparator.comparing(HostStats::getHost));
+    return stats;
+  }
+
+  private HostLimiter limiterFor(String host) {
+    return hostLimiters.computeIfAbsent(host,
+      h -> new HostLimiter(settings.getInitialConnectionsPerHost(), settings.getMaxConnectionsPerHost()));
+  }
+
+  private HostStats getStats(String host) {
+    return hostStats.computeIfAbsent(host,
+      h -> new HostStats(h, settings.getMaxConnectionsPerHost(), limiterFor(h).getLimit()));
+  }
+
+  private HttpRequest buildRequest(URI uri, CacheValidators validators) {
+    var builder = HttpRequest.newBuilder()
+      .GET()
+      .uri(uri)
+      .timeout(settings.getReadTimeout())
+      .setHeader("User-Agent", settings.getUserAgent())
+      .setHeader("Accept-Encoding", DecodingBodySubscriber.ACCEPT_ENCODING);
+
+    if (validators != null) {
+      if (validators.getEtag() != null && !validators.getEtag().isBlank())
+        builder.setHeader("If-None-Match", validators.getEtag());
+      if (validators.getLastModified() != null && !validators.getLastModified().isBlank())
+        builder.setHeader("If-Modified-Since", validators.getLastModified());
+    }
+    return builder.build();
+  }
+
+  private static CacheValidators validatorsOf(HttpResponse<?> response) {
+    return new CacheValidators(
+      response.headers().firstValue("ETag").orElse(null),
+      response.headers().firstValue("Last-Modified").orElse(null));
+  }
+
+  private static String hostOf(URI uri) {
+    String host = uri.getHost();
+    return host == null ? "" : host.toLowerCase();
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1_000_000;
+  }
+}
@@ -0,0 +1,85 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.net.URI;
+
+/**
+ * The outcome of a single page fetch. A status code of 0 means we never got a response.
+ */
+public class FetchResult {
+
+  private final URI uri;
+  private final int statusCode;
+  private final String body;
+  private final long latencyMillis;
+  private final CacheValidators validators;
+  private final boolean retryable;
+
+  public FetchResult(URI uri, int statusCode, String body, long latencyMillis, CacheValidators validators) {
+    this(uri, statusCode, body, latencyMillis, validators, RetryPolicy.isTransient(statusCode));
+  }
+
+  private FetchResult(URI uri, int statusCode, String body, long latencyMillis, CacheValidators validators,
+                      boolean retryable) {
+    this.uri = uri;
+    this.statusCode = statusCode;
+    this.body = body;
+    this.latencyMillis = latencyMillis;
+    this.validators = validators;
+    this.retryable = retryable;
+  }
+
+  public static FetchResult failed(URI uri, long latencyMillis) {
+    return failed(uri, latencyMillis, false);
+  }
+
+  /**
+   * we never got a response
+   *
+   * @param retryable the connection failed in a way that may go away if we try again
+   */
+  static FetchResult failed(URI uri, long latencyMillis, boolean retryable) {
+    return new FetchResult(uri, 0, null, latencyMillis, null, retryable);
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  public long getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  /**
+   * the ETag/Last-Modified the server sent with this response, null if we got no response
+   */
+  public CacheValidators getValidators() {
+    return validators;
+  }
+
+  /**
+   * the server says the page hasn't changed since the validators we sent
+   */
+  public boolean isNotModified() {
+    return statusCode == 304;
+  }
+
+  /**
+   * the request failed in a way that asking again might fix, a dropped connection or an
+   * overloaded server
+   */
+  public boolean isRetryable() {
+    return retryable;
+  }
+
+  public boolean isSuccessful() {
+    return statusCode >= 200 && statusCode < 300;
+  }
+}
@@ -0,0 +1,99 @@
+package com.ajisaac.scrapebatch.network;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.Duration;
+
+/**
+ * Tunables for the fetch engine. Read once from the application config, every value has a default
+ * so the engine also works when nothing is configured.
+ */
+public class FetchSettings {
+
+  private final Duration connectTimeout;
+  private final Duration readTimeout;
+  private final int initialConnectionsPerHost;
+  private final int maxConnectionsPerHost;
+  private final String userAgent;
+  private final long maxBodyBytes;
+  private final Duration parseTimeout;
+  private final RetryPolicy retryPolicy;
+
+  public FetchSettings(Duration connectTimeout, Duration readTimeout, int initialConnectionsPerHost,
+                       int maxConnectionsPerHost, String userAgent, long maxBodyBytes, Duration parseTimeout,
+                       RetryPolicy retryPolicy) {
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.initialConnectionsPerHost = Math.max(1, initialConnectionsPerHost);
+    this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    this.userAgent = userAgent;
+    this.maxBodyBytes = maxBodyBytes;
+    this.parseTimeout = parseTimeout;
+    this.retryPolicy = retryPolicy;
+  }
+
+  public static FetchSettings fromConfig() {
+    Config config = ConfigProvider.getConfig();
+    return new FetchSettings(
+      Duration.ofSeconds(config.getOptionalValue("scrape.fetch.connect-timeout-seconds", Integer.class).orElse(10)),
+      Duration.ofSeconds(config.getOptionalValue("scrape.fetch.read-timeout-seconds", Integer.class).orElse(30)),
+      config.getOptionalValue("scrape.fetch.initial-connections-per-host", Integer.class).orElse(2),
+      config.getOptionalValue("scrape.fetch.max-connections-per-host", Integer.class).orElse(8),
+      config.getOptionalValue("scrape.fetch.user-agent", String.class)
+        .orElse("Mozilla/5.0 (Windows NT 10.0; rv:68.0) Gecko/20100101 Firefox/68.0"),
+      config.getOptionalValue("scrape.fetch.max-body-bytes", Long.class).orElse(5L * 1024 * 1024),
+      Duration.ofSeconds(config.getOptionalValue("scrape.fetch.parse-timeout-seconds", Integer.class).orElse(30)),
+      RetryPolicy.fromConfig());
+  }
+
+  public Duration getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /**
+   * how long we wait for a server to start answering before giving up on the request
+   */
+  public Duration getReadTimeout() {
+    return readTimeout;
+  }
+
+  /**
+   * where the adaptive per host connection cap starts out
+   */
+  public int getInitialConnectionsPerHost() {
+    return initialConnectionsPerHost;
+  }
+
+  /**
+   * the adaptive per host connection cap never grows past this
+   */
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  public String getUserAgent() {
+    return userAgent;
+  }
+
+  /**
+   * the most decoded bytes we will accept for a single page before giving up on it
+   */
+  public long getMaxBodyBytes() {
+    return maxBodyBytes;
+  }
+
+  /**
+   * how long a parser may spend reading a streamed page
+   */
+  public Duration getParseTimeout() {
+    return parseTimeout;
+  }
+
+  /**
+   * how transient failures are retried
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+}
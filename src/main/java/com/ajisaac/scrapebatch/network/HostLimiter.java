@@ -0,0 +1,88 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Caps how many requests we have open against one host. Callers get a future that completes once
+ * they hold a permit, so nobody has to park a thread while waiting their turn.
+ *
+ * The cap moves AIMD style: it creeps up by about one per round trip while the host answers as
+ * quickly as it usually does, and halves whenever the host pushes back with a 429, a 503 or a
+ * failed request.
+ */
+class HostLimiter {
+
+  // a response slower than this multiple of the usual latency doesn't count as "flat"
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double LATENCY_SMOOTHING = 0.1;
+
+  private final int ceiling;
+  private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+  private double limit;
+  private double baselineLatency = -1;
+  private int inUse = 0;
+
+  HostLimiter(int initialLimit, int ceiling) {
+    this.ceiling = Math.max(1, ceiling);
+    this.limit = Math.max(1, Math.min(initialLimit, this.ceiling));
+  }
+
+  CompletableFuture<Void> acquire() {
+    synchronized (this) {
+      if (inUse < permits()) {
+        inUse++;
+        return CompletableFuture.completedFuture(null);
+      }
+      var ticket = new CompletableFuture<Void>();
+      waiting.add(ticket);
+      return ticket;
+    }
+  }
+
+  void release() {
+    List<CompletableFuture<Void>> granted = new ArrayList<>();
+    synchronized (this) {
+      inUse--;
+      while (inUse < permits() && !waiting.isEmpty()) {
+        inUse++;
+        granted.add(waiting.poll());
+      }
+    }
+    // complete outside the lock, a ticket that was cancelled hands its permit straight back
+    for (var ticket : granted)
+      if (!ticket.complete(null))
+        release();
+  }
+
+  /**
+   * the host answered normally, widen the cap if it did so about as fast as usual
+   */
+  synchronized void onSuccess(long latencyMillis) {
+    if (baselineLatency < 0)
+      baselineLatency = latencyMillis;
+
+    if (latencyMillis <= baselineLatency * LATENCY_TOLERANCE)
+      limit = Math.min(ceiling, limit + 1 / limit);
+
+    baselineLatency += (latencyMillis - baselineLatency) * LATENCY_SMOOTHING;
+  }
+
+  /**
+   * the host told us to slow down, or didn't answer at all
+   */
+  synchronized void onBackoff() {
+    limit = Math.max(1, limit / 2);
+  }
+
+  synchronized double getLimit() {
+    return limit;
+  }
+
+  private int permits() {
+    return (int) limit;
+  }
+}
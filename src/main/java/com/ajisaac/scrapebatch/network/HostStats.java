@@ -0,0 +1,156 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Running connection and latency numbers for a single host. Updated by the fetch engine, read by
+ * whoever wants to know how a site is behaving.
+ */
+public class HostStats {
+
+  private static final int RECENT_LATENCIES = 1024;
+
+  private final String host;
+  private final int maxConnections;
+  private final AtomicInteger activeConnections = new AtomicInteger();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong throttled = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong totalLatencyMillis = new AtomicLong();
+  private final AtomicLong maxLatencyMillis = new AtomicLong();
+  private final AtomicLong bytesOnWire = new AtomicLong();
+  private final AtomicLong bytesDecoded = new AtomicLong();
+  // the latest request latencies, for percentiles
+  private final AtomicLongArray recentLatencies = new AtomicLongArray(RECENT_LATENCIES);
+  private volatile double concurrencyLimit;
+
+  public HostStats(String host, int maxConnections, double concurrencyLimit) {
+    this.host = host;
+    this.maxConnections = maxConnections;
+    this.concurrencyLimit = concurrencyLimit;
+  }
+
+  void requestStarted() {
+    activeConnections.incrementAndGet();
+  }
+
+  void requestFinished(long latencyMillis, boolean failed) {
+    activeConnections.decrementAndGet();
+    long n = requests.incrementAndGet();
+    if (failed)
+      failures.incrementAndGet();
+    totalLatencyMillis.addAndGet(latencyMillis);
+    maxLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+    recentLatencies.set((int) ((n - 1) % RECENT_LATENCIES), latencyMillis);
+  }
+
+  void transferred(long wire, long decoded) {
+    bytesOnWire.addAndGet(wire);
+    bytesDecoded.addAndGet(decoded);
+  }
+
+  void throttled() {
+    throttled.incrementAndGet();
+  }
+
+  void retried() {
+    retries.incrementAndGet();
+  }
+
+  void setConcurrencyLimit(double concurrencyLimit) {
+    this.concurrencyLimit = concurrencyLimit;
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /**
+   * how many requests the adaptive limiter currently lets us have open against the host
+   */
+  public int getConcurrencyLimit() {
+    return (int) concurrencyLimit;
+  }
+
+  public int getActiveConnections() {
+    return activeConnections.get();
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * how many times the host answered with 429 or 503
+   */
+  public long getThrottled() {
+    return throttled.get();
+  }
+
+  /**
+   * how many requests we sent again after a transient failure
+   */
+  public long getRetries() {
+    return retries.get();
+  }
+
+  public long getAverageLatencyMillis() {
+    long count = requests.get();
+    return count == 0 ? 0 : totalLatencyMillis.get() / count;
+  }
+
+  public long getMaxLatencyMillis() {
+    return maxLatencyMillis.get();
+  }
+
+  /**
+   * median latency over the last 1024 requests
+   */
+  public long getP50LatencyMillis() {
+    return percentile(0.50);
+  }
+
+  /**
+   * 99th percentile latency over the last 1024 requests
+   */
+  public long getP99LatencyMillis() {
+    return percentile(0.99);
+  }
+
+  private long percentile(double p) {
+    int count = (int) Math.min(requests.get(), RECENT_LATENCIES);
+    if (count == 0)
+      return 0;
+    long[] sorted = new long[count];
+    for (int i = 0; i < count; i++)
+      sorted[i] = recentLatencies.get(i);
+    Arrays.sort(sorted);
+    return sorted[(int) Math.ceil(p * count) - 1];
+  }
+
+  /**
+   * response body bytes as they came over the network, compressed or not
+   */
+  public long getBytesOnWire() {
+    return bytesOnWire.get();
+  }
+
+  /**
+   * response body bytes after we decompressed them
+   */
+  public long getBytesDecoded() {
+    return bytesDecoded.get();
+  }
+}
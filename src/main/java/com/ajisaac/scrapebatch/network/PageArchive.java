@@ -0,0 +1,166 @@
+package com.ajisaac.scrapebatch.network;
+
+import com.google.common.hash.Hashing;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local store of every page we fetched, so we can re-parse old pages without going back to the
+ * job sites. Pages are gzipped and stored under the sha256 of their content, so a page that
+ * didn't change between runs is only kept once. A second index maps each url to the content it
+ * had the last time we fetched it.
+ *
+ * <pre>
+ *   objects/ab/ab12...ef.gz   the page, named after the hash of its content
+ *   urls/cd34...01            the content hash the url pointed to last time
+ * </pre>
+ */
+public class PageArchive {
+
+  private static final PageArchive INSTANCE = fromConfig();
+
+  private final boolean enabled;
+  private final Path objects;
+  private final Path urls;
+
+  public PageArchive(boolean enabled, Path root) {
+    this.enabled = enabled;
+    this.objects = root.resolve("objects");
+    this.urls = root.resolve("urls");
+  }
+
+  private static PageArchive fromConfig() {
+    Config config = ConfigProvider.getConfig();
+    return new PageArchive(
+      config.getOptionalValue("scrape.archive.enabled", Boolean.class).orElse(false),
+      Paths.get(config.getOptionalValue("scrape.archive.dir", String.class).orElse("data/archive")));
+  }
+
+  public static PageArchive getInstance() {
+    return INSTANCE;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * archive the page we just fetched from the url, does nothing when archiving is turned off
+   */
+  public void store(URI uri, String page) {
+    if (!enabled || uri == null || page == null || page.isBlank())
+      return;
+
+    byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+    String contentHash = Hashing.sha256().hashBytes(bytes).toString();
+    try {
+      Path object = objectPath(contentHash);
+      if (!Files.exists(object)) {
+        Files.createDirectories(object.getParent());
+        Path tmp = Files.createTempFile(object.getParent(), contentHash, ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+          out.write(bytes);
+        }
+        moveIntoPlace(tmp, object);
+      }
+
+      Path index = urlPath(uri.toString());
+      Files.createDirectories(index.getParent());
+      Path tmp = Files.createTempFile(index.getParent(), "url", ".tmp");
+      Files.writeString(tmp, contentHash);
+      moveIntoPlace(tmp, index);
+    } catch (IOException e) {
+      System.out.println("Failed to archive " + uri + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * the last version of the page we archived for the url
+   */
+  public Optional<String> load(String href) {
+    if (href == null)
+      return Optional.empty();
+
+    try {
+      Path index = urlPath(href);
+      if (!Files.exists(index))
+        return Optional.empty();
+
+      Path object = objectPath(Files.readString(index).trim());
+      if (!Files.exists(object))
+        return Optional.empty();
+
+      return Optional.of(readObject(object));
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * the page is memory mapped and inflated straight out of the mapping, no intermediate copy
+   * of the compressed bytes on the heap
+   */
+  private static String readObject(Path object) throws IOException {
+    try (FileChannel channel = FileChannel.open(object, StandardOpenOption.READ)) {
+      ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      try (InputStream in = new GZIPInputStream(new ByteBufferInputStream(mapped))) {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      }
+    }
+  }
+
+  private Path objectPath(String contentHash) {
+    return objects.resolve(contentHash.substring(0, 2)).resolve(contentHash + ".gz");
+  }
+
+  private Path urlPath(String href) {
+    return urls.resolve(Hashing.sha256().hashString(href, StandardCharsets.UTF_8).toString());
+  }
+
+  private static void moveIntoPlace(Path tmp, Path target) throws IOException {
+    try {
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buffer.hasRemaining())
+        return -1;
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -1,11 +1,9 @@
 package com.ajisaac.scrapebatch.network;
 
-import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class PageGrabber {
 
@@ -13,10 +11,22 @@ public class PageGrabber {
   }
 
   public static String grabPage(URI uri) {
+    return grabPage(uri, null);
+  }
+
+  /**
+   * grab the page, waiting for the host's politeness budget first. Error pages (429, 503, 404...)
+   * come back as null rather than being handed to a parser as if they were content.
+   */
+  public static String grabPage(URI uri, Politeness politeness) {
     if (uri == null)
       return null;
 
-    var ret = new PageRequest(uri).sendGet();
+    var result = FetchEngine.getInstance().fetch(uri, politeness);
+    if (!result.isSuccessful())
+      return null;
+
+    var ret = result.getBody();
     if (ret == null || ret.isBlank())
       return null;
 
@@ -35,40 +45,94 @@ public class PageGrabber {
     }
   }
 
-  static class PageRequest {
-    private final HttpClient httpClient;
-    private final URI uri;
-
-    public PageRequest(URI uri) {
-      // todo do we need to create a new one of these every time or can we reuse?
-      this.uri = uri;
-      httpClient =
-        HttpClient.newBuilder()
-          .version(HttpClient.Version.HTTP_2)
-          .followRedirects(HttpClient.Redirect.NORMAL)
-          .build();
+  /**
+   * Start grabbing the page as a stream for a parser to read straight off the wire. The future
+   * holds null when we couldn't get the page or the server answered with anything but a 2xx.
+   * When pages are being archived the page is archived once the parser has read it all.
+   */
+  public static CompletableFuture<StreamedPage> grabPageStreamAsync(String href, Politeness politeness) {
+    return grabPageStreamAsync(href, politeness, CancellationToken.NONE);
+  }
+
+  /**
+   * grabPageStreamAsync that gives up when the token is cancelled, the future then holds null
+   */
+  public static CompletableFuture<StreamedPage> grabPageStreamAsync(String href, Politeness politeness,
+                                                                    CancellationToken token) {
+    if (href == null || href.isBlank())
+      return CompletableFuture.completedFuture(null);
+
+    URI uri;
+    try {
+      uri = new URI(href);
+    } catch (URISyntaxException ex) {
+      return CompletableFuture.completedFuture(null);
     }
 
-    public String sendGet() {
-      if (this.uri == null) {
+    return FetchEngine.getInstance().fetchStreamAsync(uri, politeness, token).thenApply(page -> {
+      if (page.isSuccessful())
+        return page;
+      page.close();
+      return null;
+    });
+  }
+
+  /**
+   * the archived copy of the page, never touches the network. Null if we never archived it.
+   */
+  public static String replayPage(String href) {
+    if (href == null || href.isBlank())
+      return null;
+
+    Optional<String> page = PageArchive.getInstance().load(href);
+    return page.orElse(null);
+  }
+
+  public static CompletableFuture<String> grabPageAsync(URI uri) {
+    return grabPageAsync(uri, null);
+  }
+
+  /**
+   * same as grabPage but doesn't block, the future holds null when we couldn't get the page or
+   * the server answered with anything other than a 2xx
+   */
+  public static CompletableFuture<String> grabPageAsync(URI uri, Politeness politeness) {
+    return grabPageAsync(uri, politeness, CancellationToken.NONE);
+  }
+
+  /**
+   * grabPageAsync that gives up when the token is cancelled, the future then holds null
+   */
+  public static CompletableFuture<String> grabPageAsync(URI uri, Politeness politeness, CancellationToken token) {
+    if (uri == null)
+      return CompletableFuture.completedFuture(null);
+
+    return FetchEngine.getInstance().fetchAsync(uri, politeness, null, token).thenApply(result -> {
+      if (!result.isSuccessful())
+        return null;
+      var ret = result.getBody();
+      if (ret == null || ret.isBlank())
         return null;
-      }
-
-      HttpRequest request =
-        HttpRequest.newBuilder()
-          .GET()
-          .uri(uri)
-          .setHeader(
-            "User-Agent", "Mozilla/5.0 (Windows NT 10.0; rv:68.0) Gecko/20100101 Firefox/68.0")
-          .build();
-
-      try {
-        HttpResponse<String> response =
-          httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        return response.body();
-      } catch (IOException | InterruptedException e) {
-        return "";
-      }
+      return ret;
+    });
+  }
+
+  public static CompletableFuture<String> grabPageAsync(String href) {
+    return grabPageAsync(href, null);
+  }
+
+  public static CompletableFuture<String> grabPageAsync(String href, Politeness politeness) {
+    return grabPageAsync(href, politeness, CancellationToken.NONE);
+  }
+
+  public static CompletableFuture<String> grabPageAsync(String href, Politeness politeness, CancellationToken token) {
+    if (href == null || href.isBlank())
+      return CompletableFuture.completedFuture(null);
+
+    try {
+      return grabPageAsync(new URI(href), politeness, token);
+    } catch (URISyntaxException ex) {
+      return CompletableFuture.completedFuture(null);
     }
   }
 }
@@ -0,0 +1,48 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.util.Objects;
+
+/**
+ * How hard we are allowed to hit a host. Requests per minute is the long run rate, burst is how
+ * many requests may go out back to back after the host has been quiet for a while.
+ */
+public class Politeness {
+
+  public static final Politeness DEFAULT = new Politeness(10, 1);
+
+  private final double requestsPerMinute;
+  private final int burst;
+
+  public Politeness(double requestsPerMinute, int burst) {
+    if (requestsPerMinute <= 0)
+      throw new IllegalArgumentException("requestsPerMinute must be positive");
+    this.requestsPerMinute = requestsPerMinute;
+    this.burst = Math.max(1, burst);
+  }
+
+  public double getRequestsPerMinute() {
+    return requestsPerMinute;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    Politeness that = (Politeness) o;
+    return Double.compare(that.requestsPerMinute, requestsPerMinute) == 0 && burst == that.burst;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(requestsPerMinute, burst);
+  }
+
+  @Override
+  public String toString() {
+    return requestsPerMinute + " requests/minute, burst " + burst;
+  }
+}
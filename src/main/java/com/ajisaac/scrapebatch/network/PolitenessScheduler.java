@@ -0,0 +1,99 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Central rate limiter for every host we scrape. Each host has its own token bucket shared by
+ * every scraper that talks to it. Rather than sleeping, a request that has to wait is parked on a
+ * timer and released when its turn comes up.
+ *
+ * Several scrape jobs can run against one host at once, each asking for its own budget. The host
+ * gets the most conservative of the budgets asked for in the last CLAIM_TTL, so a job with a
+ * looser override can't speed up a stricter one, and once the strict job is done the host goes
+ * back to whatever the jobs still running want.
+ */
+public class PolitenessScheduler {
+
+  private static final PolitenessScheduler INSTANCE = new PolitenessScheduler();
+  private static final long CLAIM_TTL = TimeUnit.MINUTES.toNanos(2);
+
+  private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final Map<String, Politeness> policies = new ConcurrentHashMap<>();
+  // by host, every budget asked for lately and when it was last asked for
+  private final Map<String, Map<Politeness, Long>> claims = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "politeness-timer");
+    t.setDaemon(true);
+    return t;
+  });
+
+  public static PolitenessScheduler getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * completes when the host is ready to receive another request from us
+   *
+   * @param politeness the budget this caller wants, null to go with whatever the host already has
+   */
+  public CompletableFuture<Void> acquire(String host, Politeness politeness) {
+    long delay = bucketFor(host, politeness).reserve();
+    if (delay <= 0)
+      return CompletableFuture.completedFuture(null);
+
+    var ready = new CompletableFuture<Void>();
+    timer.schedule(() -> ready.complete(null), delay, TimeUnit.NANOSECONDS);
+    return ready;
+  }
+
+  /**
+   * hold every request to the host until the pause is over, on top of its normal budget
+   */
+  public void pauseHost(String host, Duration pause) {
+    if (pause.isNegative() || pause.isZero())
+      return;
+    bucketFor(host, null).pause(pause.toNanos());
+  }
+
+  public Politeness getPoliteness(String host) {
+    return policies.get(host);
+  }
+
+  private TokenBucket bucketFor(String host, Politeness politeness) {
+    TokenBucket existing = buckets.get(host);
+    if (politeness == null && existing != null)
+      return existing;
+    Politeness policy = strictestClaim(host, politeness == null ? Politeness.DEFAULT : politeness);
+    TokenBucket bucket = buckets.computeIfAbsent(host, h -> new TokenBucket(policy));
+    Politeness previous = policies.put(host, policy);
+    if (previous != null && !previous.equals(policy))
+      bucket.update(policy);
+    return bucket;
+  }
+
+  /**
+   * note the budget as asked for just now, and combine it with the others still current for the host
+   */
+  private Politeness strictestClaim(String host, Politeness politeness) {
+    Map<Politeness, Long> hostClaims = claims.computeIfAbsent(host, h -> new ConcurrentHashMap<>());
+    long now = System.nanoTime();
+    hostClaims.put(politeness, now);
+    hostClaims.values().removeIf(claimedAt -> now - claimedAt > CLAIM_TTL);
+
+    double requestsPerMinute = politeness.getRequestsPerMinute();
+    int burst = politeness.getBurst();
+    for (Politeness claim : hostClaims.keySet()) {
+      requestsPerMinute = Math.min(requestsPerMinute, claim.getRequestsPerMinute());
+      burst = Math.min(burst, claim.getBurst());
+    }
+    if (requestsPerMinute == politeness.getRequestsPerMinute() && burst == politeness.getBurst())
+      return politeness;
+    return new Politeness(requestsPerMinute, burst);
+  }
+}
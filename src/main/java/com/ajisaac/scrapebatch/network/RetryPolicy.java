@@ -0,0 +1,67 @@
+package com.ajisaac.scrapebatch.network;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Which failed requests are worth another go and how long to wait before trying again. Only
+ * transient failures are retried: the connection dropped or timed out, or the server said it is
+ * overloaded. A 404 won't turn into a 200 by asking again. The wait doubles every attempt and is
+ * picked at random below that ceiling, so scrapers that failed together don't retry together.
+ */
+public class RetryPolicy {
+
+  private final int maxAttempts;
+  private final Duration baseDelay;
+  private final Duration maxDelay;
+
+  public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+  }
+
+  public static RetryPolicy fromConfig() {
+    Config config = ConfigProvider.getConfig();
+    return new RetryPolicy(
+      config.getOptionalValue("scrape.fetch.max-attempts", Integer.class).orElse(3),
+      Duration.ofMillis(config.getOptionalValue("scrape.fetch.retry-base-millis", Long.class).orElse(500L)),
+      Duration.ofMillis(config.getOptionalValue("scrape.fetch.retry-max-millis", Long.class).orElse(10_000L)));
+  }
+
+  /**
+   * how many times a request is sent at most, the first try included
+   */
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * the server answered but might answer differently in a moment
+   */
+  static boolean isTransient(int statusCode) {
+    switch (statusCode) {
+      case 408:
+      case 429:
+      case 500:
+      case 502:
+      case 503:
+      case 504:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * how long to wait after the given failed attempt, counting from 1
+   */
+  long backoffMillis(int attempt) {
+    long ceiling = baseDelay.toMillis() << Math.min(attempt - 1, 20);
+    ceiling = Math.min(ceiling, maxDelay.toMillis());
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+}
@@ -0,0 +1,107 @@
+package com.ajisaac.scrapebatch.network;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Where scrape runs, page fetches and parsers get their threads from. With scrape.threads.virtual
+ * on and a JDK that has virtual threads (21+), every task gets a virtual thread of its own, so a
+ * scrape that spends its life waiting on the network doesn't hold a platform thread and there is no
+ * pool to size. Otherwise, or if the JDK doesn't have them, we use plain daemon threads like
+ * before.
+ *
+ * We build against Java 11, so the virtual thread api is looked up reflectively.
+ */
+public class ScrapeThreads {
+
+  private static final boolean REQUESTED =
+    ConfigProvider.getConfig().getOptionalValue("scrape.threads.virtual", Boolean.class).orElse(false);
+
+  // Thread.ofVirtual() and Thread.Builder, null when virtual threads are off or unavailable
+  private static final Method OF_VIRTUAL;
+  private static final Method NAME;
+  private static final Method FACTORY;
+  private static final Method THREAD_PER_TASK;
+
+  static {
+    Method ofVirtual = null, name = null, factory = null, perTask = null;
+    if (REQUESTED) {
+      try {
+        Class<?> builder = Class.forName("java.lang.Thread$Builder");
+        ofVirtual = Thread.class.getMethod("ofVirtual");
+        name = builder.getMethod("name", String.class, long.class);
+        factory = builder.getMethod("factory");
+        perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        // preview builds have the methods but refuse to run them without --enable-preview
+        ofVirtual.invoke(null);
+      } catch (ReflectiveOperationException | RuntimeException e) {
+        System.out.println("scrape.threads.virtual is set but this JDK has no virtual threads, using platform threads");
+        ofVirtual = null;
+      }
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+    THREAD_PER_TASK = perTask;
+  }
+
+  private ScrapeThreads() {
+  }
+
+  /**
+   * true if we hand out virtual threads
+   */
+  public static boolean isVirtual() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Threads named name-0, name-1, ... Virtual if enabled, daemon platform threads otherwise, a
+   * scrape should never keep the jvm alive.
+   */
+  public static ThreadFactory factory(String name) {
+    if (isVirtual()) {
+      try {
+        Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+        return (ThreadFactory) FACTORY.invoke(builder);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Couldn't create virtual thread factory", e);
+      }
+    }
+    AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, name + "-" + count.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  /**
+   * A thread per task when threads are virtual. Otherwise a fixed pool of platformThreads daemon
+   * threads, callers bound their own work so that is all they need.
+   */
+  public static ExecutorService newExecutor(String name, int platformThreads) {
+    if (isVirtual()) {
+      try {
+        return (ExecutorService) THREAD_PER_TASK.invoke(null, factory(name));
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Couldn't create virtual thread executor", e);
+      }
+    }
+    return Executors.newFixedThreadPool(Math.max(1, platformThreads), factory(name));
+  }
+
+  /**
+   * starts the task on a thread of its own
+   */
+  public static Thread start(String name, Runnable task) {
+    Thread t = factory(name).newThread(task);
+    t.start();
+    return t;
+  }
+}
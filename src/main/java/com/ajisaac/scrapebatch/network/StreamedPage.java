@@ -0,0 +1,124 @@
+package com.ajisaac.scrapebatch.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongSupplier;
+
+/**
+ * A page whose body is still coming off the wire. Parsers read straight from the stream so we
+ * never hold the raw bytes and the parsed document at the same time. Closing it gives the
+ * connection back for the next request, so always close it.
+ */
+public class StreamedPage implements Closeable {
+
+  private final URI uri;
+  private final int statusCode;
+  private final InputStream body;
+  private final Runnable onClose;
+  private final boolean retryable;
+  private final long latencyMillis;
+  private final LongSupplier bytesRead;
+  private boolean closed = false;
+
+  /**
+   * @param latencyMillis how long the response took to start coming back
+   * @param bytesRead     how much of the decoded body has been read so far
+   */
+  StreamedPage(URI uri, int statusCode, InputStream body, Runnable onClose, long latencyMillis, LongSupplier bytesRead) {
+    this(uri, statusCode, body, onClose, RetryPolicy.isTransient(statusCode), latencyMillis, bytesRead);
+  }
+
+  private StreamedPage(URI uri, int statusCode, InputStream body, Runnable onClose, boolean retryable,
+                       long latencyMillis, LongSupplier bytesRead) {
+    this.uri = uri;
+    this.statusCode = statusCode;
+    this.body = body;
+    this.onClose = onClose;
+    this.retryable = retryable;
+    this.latencyMillis = latencyMillis;
+    this.bytesRead = bytesRead;
+  }
+
+  /**
+   * wrap a page we already have in memory, e.g. one from the archive
+   */
+  public static StreamedPage ofString(URI uri, String page) {
+    byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+    return new StreamedPage(uri, 200, new ByteArrayInputStream(bytes), () -> {
+    }, 0, () -> bytes.length);
+  }
+
+  static StreamedPage failed(URI uri, int statusCode) {
+    return new StreamedPage(uri, statusCode, InputStream.nullInputStream(), () -> {
+    }, 0, () -> 0);
+  }
+
+  /**
+   * we never got a response because the connection failed in a way that may go away if we try
+   * again
+   */
+  static StreamedPage retryable(URI uri) {
+    return new StreamedPage(uri, 0, InputStream.nullInputStream(), () -> {
+    }, true, 0, () -> 0);
+  }
+
+  public URI getUri() {
+    return uri;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  /**
+   * see FetchResult.isRetryable()
+   */
+  public boolean isRetryable() {
+    return retryable;
+  }
+
+  public boolean isSuccessful() {
+    return statusCode >= 200 && statusCode < 300;
+  }
+
+  public long getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  /**
+   * decoded bytes of the body read so far, all of it once a parser is done with the page
+   */
+  public long getBytesRead() {
+    return bytesRead.getAsLong();
+  }
+
+  /**
+   * the decoded body, capped in size and read time
+   */
+  public InputStream getBody() {
+    return body;
+  }
+
+  /**
+   * Only the flag is guarded, a cancel may close the page from another thread while the parser is
+   * still reading it.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed)
+        return;
+      closed = true;
+    }
+    try {
+      body.close();
+    } catch (IOException e) {
+      // nothing left to do with it
+    }
+    onClose.run();
+  }
+}
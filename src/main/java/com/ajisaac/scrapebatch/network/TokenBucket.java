@@ -0,0 +1,51 @@
+package com.ajisaac.scrapebatch.network;
+
+/**
+ * Classic token bucket. Instead of making callers wait, reserve() hands out a token immediately
+ * and tells the caller how long to hold off before using it, so the bucket can go into debt and
+ * later callers queue up behind earlier ones.
+ */
+class TokenBucket {
+
+  private double nanosPerToken;
+  private double capacity;
+  private double tokens;
+  private long lastRefill;
+
+  TokenBucket(Politeness politeness) {
+    update(politeness);
+    this.tokens = capacity;
+    this.lastRefill = System.nanoTime();
+  }
+
+  synchronized void update(Politeness politeness) {
+    this.nanosPerToken = 60_000_000_000d / politeness.getRequestsPerMinute();
+    this.capacity = politeness.getBurst();
+    this.tokens = Math.min(tokens, capacity);
+  }
+
+  /**
+   * push every future reservation back by at least the given amount, used when a host asks us
+   * to go away for a while
+   */
+  synchronized void pause(long nanos) {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+    lastRefill = now;
+    tokens = Math.min(tokens, 0) - nanos / nanosPerToken;
+  }
+
+  /**
+   * take a token, returns how many nanoseconds from now the caller may go
+   */
+  synchronized long reserve() {
+    long now = System.nanoTime();
+    tokens = Math.min(capacity, tokens + (now - lastRefill) / nanosPerToken);
+    lastRefill = now;
+
+    tokens -= 1;
+    if (tokens >= 0)
+      return 0;
+    return (long) (-tokens * nanosPerToken);
+  }
+}
@@ -30,60 +30,73 @@ public class WebsocketNotifier {
   }
 
   public void send(String message, String name) {
-    System.out.println(dateString() + message);
-    ms.send(new Message(name, dateString() + message));
+    publish(dateString() + message, name);
   }
 
   public void error(Exception e, String name) {
     var msg = dateString() + e.getMessage() + " when scraping " + name + ".";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void sleeping(int seconds, String name) {
     var msg = dateString() + "Sleeping for " + seconds + " seconds.";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void successfulDescPageScrape(JobPosting jobPosting, String name) {
     var msg = dateString() + "Successfully scraped " + jobPosting.getJobTitle() + " - " + jobPosting.getCompany() + ".";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void failedDescPageScrape(String href, String name) {
     var msg = dateString() + "Failed to scrape " + href + ".";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void scrapingDescPage(String href, String name) {
     var msg = dateString() + "Scraping " + href + ".";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void scrapingMainPage(String href, String name) {
     var msg = dateString() + "Scraping main page " + href + ".";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void failMainPageScrape(String href, String name) {
     var msg = dateString() + "Failed scraping main page " + href + ".";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void successfulMainPageScrape(String href, String name) {
     var msg = dateString() + "Success scraping main page " + href + ".";
-    System.out.println(msg);
-    ms.send(new Message(name, msg));
+    publish(msg, name);
   }
 
   public void foundPostings(int size, String name, String href) {
     var msg = dateString() + "Found " + size + " postings from " + href + ".";
+    publish(msg, name);
+  }
+
+  public void circuitOpened(String site, long seconds, String name) {
+    var msg = dateString() + site + " keeps failing, leaving it alone for " + seconds + " seconds.";
+    publish(msg, name);
+  }
+
+  public void circuitStillOpen(String site, long seconds, String name) {
+    var msg = dateString() + site + " is still failing, skipping it for another " + seconds + " seconds.";
+    publish(msg, name);
+  }
+
+  public void circuitClosed(String site, String name) {
+    var msg = dateString() + site + " is answering again.";
+    publish(msg, name);
+  }
+
+  /**
+   * print the message and push it to the frontend
+   */
+  protected void publish(String msg, String name) {
     System.out.println(msg);
     ms.send(new Message(name, msg));
   }
@@ -0,0 +1,118 @@
+package com.ajisaac.scrapebatch.scrape;
+
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Stops us hammering a job site that is down. After enough pages in a row fail, even with the
+ * fetch engine's retries, the breaker opens and every scrape of that site backs off until the
+ * cool down is over. Then a single request is let through to see if the site is back, everyone
+ * else is turned away until it reports back. If it fails too the breaker opens again for twice as
+ * long. A probe that never reports back, its run was stopped say, is given up on after another cool
+ * down and the next caller probes instead.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static final Map<ScrapingExecutorType, CircuitBreaker> BREAKERS = new EnumMap<>(ScrapingExecutorType.class);
+
+  private final int failureThreshold;
+  private final Duration openFor;
+  private final Duration maxOpenFor;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private int timesOpened = 0;
+  private long openUntil = 0;
+  // while half open, when the probe out there is given up on, 0 if there is none
+  private long probeUntil = 0;
+
+  public CircuitBreaker(int failureThreshold, Duration openFor, Duration maxOpenFor) {
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.openFor = openFor;
+    this.maxOpenFor = maxOpenFor;
+  }
+
+  /**
+   * the breaker shared by every scrape job of the site
+   */
+  public static synchronized CircuitBreaker forSite(ScrapingExecutorType site) {
+    return BREAKERS.computeIfAbsent(site, s -> fromConfig());
+  }
+
+  private static CircuitBreaker fromConfig() {
+    Config config = ConfigProvider.getConfig();
+    return new CircuitBreaker(
+      config.getOptionalValue("scrape.breaker.failure-threshold", Integer.class).orElse(5),
+      Duration.ofSeconds(config.getOptionalValue("scrape.breaker.open-seconds", Integer.class).orElse(120)),
+      Duration.ofSeconds(config.getOptionalValue("scrape.breaker.max-open-seconds", Integer.class).orElse(1800)));
+  }
+
+  /**
+   * may we send the site another request. Once the cool down is over this moves the breaker to
+   * half open and lets the caller, and only the caller, probe the site.
+   */
+  public synchronized boolean allowRequest() {
+    long now = System.currentTimeMillis();
+    if (state == State.OPEN && now >= openUntil) {
+      state = State.HALF_OPEN;
+      probeUntil = 0;
+    }
+    if (state == State.CLOSED)
+      return true;
+    if (state == State.OPEN || now < probeUntil)
+      return false;
+    probeUntil = now + openFor.toMillis();
+    return true;
+  }
+
+  /**
+   * @return true if this closed the breaker
+   */
+  public synchronized boolean recordSuccess() {
+    consecutiveFailures = 0;
+    if (state == State.CLOSED)
+      return false;
+    state = State.CLOSED;
+    timesOpened = 0;
+    probeUntil = 0;
+    return true;
+  }
+
+  /**
+   * @return true if this opened the breaker
+   */
+  public synchronized boolean recordFailure() {
+    consecutiveFailures++;
+    if (state == State.OPEN)
+      return false;
+    if (state == State.CLOSED && consecutiveFailures < failureThreshold)
+      return false;
+
+    long wait = Math.min(openFor.toMillis() << Math.min(timesOpened, 20), maxOpenFor.toMillis());
+    timesOpened++;
+    state = State.OPEN;
+    openUntil = System.currentTimeMillis() + wait;
+    return true;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * how long until the breaker lets a request through again, zero unless it is open
+   */
+  public synchronized Duration getRemainingOpen() {
+    if (state != State.OPEN)
+      return Duration.ZERO;
+    return Duration.ofMillis(Math.max(0, openUntil - System.currentTimeMillis()));
+  }
+}
@@ -1,29 +1,39 @@
 package com.ajisaac.scrapebatch.scrape;
 
 import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.network.Politeness;
 import com.ajisaac.scrapebatch.scrape.executors.MultiPageScrapingExecutor;
 import com.ajisaac.scrapebatch.scrape.executors.ScrapingExecutor;
 import com.ajisaac.scrapebatch.scrape.executors.SinglePageScrapingExecutor;
 import com.ajisaac.scrapebatch.scrape.scrapers.*;
 
 public enum ScrapingExecutorType {
-  INDEED("indeed.com"),
-  WWR("weworkremotely.com"),
-  REMOTIVEIO("remotive.io"),
-  REMOTECO("remote.co"),
-  REMOTEOKIO("remoteok.io"),
-  SITEPOINT("sitepoint.com"),
-  STACKOVERFLOW("stackoverflow.com"),
-  WORKINGNOMADS("workingnomads.com");
+  INDEED("indeed.com", new Politeness(6, 1)),
+  WWR("weworkremotely.com", new Politeness(12, 2)),
+  REMOTIVEIO("remotive.io", new Politeness(12, 2)),
+  REMOTECO("remote.co", new Politeness(12, 2)),
+  REMOTEOKIO("remoteok.io", new Politeness(10, 1)),
+  SITEPOINT("sitepoint.com", new Politeness(12, 2)),
+  STACKOVERFLOW("stackoverflow.com", new Politeness(10, 2)),
+  WORKINGNOMADS("workingnomads.com", new Politeness(30, 3));
   //  workew
   //  github
   //  ycombinator
   //  flexjobs
 
   private final String baseUrl;
+  private final Politeness politeness;
 
-  ScrapingExecutorType(String baseUrl) {
+  ScrapingExecutorType(String baseUrl, Politeness politeness) {
     this.baseUrl = baseUrl;
+    this.politeness = politeness;
+  }
+
+  /**
+   * how hard we hit this site when the scrape job doesn't say otherwise
+   */
+  public Politeness getPoliteness() {
+    return politeness;
   }
 
   /**
@@ -0,0 +1,185 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+import com.ajisaac.scrapebatch.dto.JobPosting;
+import com.ajisaac.scrapebatch.network.CancellationToken;
+import com.ajisaac.scrapebatch.network.PageGrabber;
+import com.ajisaac.scrapebatch.network.Politeness;
+import com.ajisaac.scrapebatch.network.ScrapeThreads;
+import com.ajisaac.scrapebatch.network.StreamedPage;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Walks a list of postings while keeping several description pages in flight at once. Each page
+ * is parsed on a small pool of its own as soon as it arrives, so up to maxInFlight pages are being
+ * fetched and parsed at the same time. Postings are still handed back in their original order, so
+ * the executor stores them and tells the frontend about them one at a time like it always has.
+ * Close it when done, that also closes any page we gave up on.
+ */
+class DescriptionPageFetcher implements AutoCloseable {
+
+  static final int DEFAULT_MAX_IN_FLIGHT =
+    ConfigProvider.getConfig().getOptionalValue("scrape.executor.max-in-flight", Integer.class).orElse(8);
+
+  /**
+   * fills in the posting from its description page, called off the executor thread so it must
+   * not touch anything but the posting
+   */
+  interface Parser {
+    void parse(StreamedPage page, JobPosting posting) throws IOException;
+  }
+
+  private final Iterator<JobPosting> postings;
+  private final int maxInFlight;
+  private final Function<String, CompletableFuture<StreamedPage>> pageSource;
+  private final Parser parser;
+  private final RunStats stats;
+  private final Consumer<JobPosting> beforeFetch;
+  private final Deque<FetchedPage> inFlight = new ArrayDeque<>();
+  private final ExecutorService parsers;
+  private final Runnable stopParsersOnCancel;
+  private volatile boolean closed = false;
+
+  /**
+   * @param stats       gets the size, latency and parse time of every page that parses
+   * @param beforeFetch called on the executor thread right before a request is queued for a posting
+   * @param token       cancelling it interrupts the parsers, pass the same token to the page source
+   */
+  DescriptionPageFetcher(List<JobPosting> postings, int maxInFlight,
+                         Function<String, CompletableFuture<StreamedPage>> pageSource,
+                         Parser parser, RunStats stats, Consumer<JobPosting> beforeFetch, CancellationToken token) {
+    this.postings = postings.iterator();
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.pageSource = pageSource;
+    this.parser = parser;
+    this.stats = stats;
+    this.beforeFetch = beforeFetch;
+    // parsers block reading the page off the wire, so they get their own threads
+    this.parsers = ScrapeThreads.newExecutor("description-parser", this.maxInFlight);
+    this.stopParsersOnCancel = token.onCancel(parsers::shutdownNow);
+  }
+
+  /**
+   * where description pages come from, the live site or the page archive when replaying
+   */
+  static Function<String, CompletableFuture<StreamedPage>> pageSource(boolean replay, Politeness politeness,
+                                                                      CancellationToken token) {
+    if (replay)
+      return href -> CompletableFuture.completedFuture(replayed(href));
+    return href -> PageGrabber.grabPageStreamAsync(href, politeness, token);
+  }
+
+  private static StreamedPage replayed(String href) {
+    String page = PageGrabber.replayPage(href);
+    if (page == null)
+      return null;
+    try {
+      return StreamedPage.ofString(new URI(href), page);
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  boolean hasNext() {
+    return !inFlight.isEmpty() || postings.hasNext();
+  }
+
+  /**
+   * waits for the oldest outstanding posting to be parsed, topping the window back up first
+   */
+  FetchedPage next() throws InterruptedException {
+    fill();
+    FetchedPage head = inFlight.poll();
+    if (head == null)
+      return null;
+    head.await();
+    return head;
+  }
+
+  /**
+   * Stop parsing. Pages still on their way are closed unread as they arrive, the parser threads
+   * go away once the last of them is in.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    stopParsersOnCancel.run();
+    var pending = inFlight.stream().map(page -> page.parsed).toArray(CompletableFuture[]::new);
+    inFlight.clear();
+    CompletableFuture.allOf(pending).whenComplete((r, e) -> parsers.shutdown());
+  }
+
+  private void fill() {
+    while (inFlight.size() < maxInFlight && postings.hasNext()) {
+      JobPosting posting = postings.next();
+      if (posting == null)
+        continue;
+
+      if (posting.isIgnoreScrapeDescriptionPage()) {
+        inFlight.add(new FetchedPage(posting, CompletableFuture.completedFuture(true)));
+        continue;
+      }
+
+      beforeFetch.accept(posting);
+      var parsed = pageSource.apply(posting.getHref()).thenApplyAsync(page -> parse(page, posting), parsers);
+      inFlight.add(new FetchedPage(posting, parsed));
+    }
+  }
+
+  private boolean parse(StreamedPage page, JobPosting posting) {
+    try (page) {
+      if (page == null || closed)
+        return false;
+      long start = System.nanoTime();
+      parser.parse(page, posting);
+      stats.parsed(System.nanoTime() - start);
+      stats.descriptionPage(page.getBytesRead(), page.getLatencyMillis());
+      return true;
+    } catch (IOException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  static class FetchedPage {
+    private final JobPosting posting;
+    private final CompletableFuture<Boolean> parsed;
+    private boolean successful;
+
+    FetchedPage(JobPosting posting, CompletableFuture<Boolean> parsed) {
+      this.posting = posting;
+      this.parsed = parsed;
+    }
+
+    private void await() throws InterruptedException {
+      try {
+        successful = parsed.get();
+      } catch (ExecutionException e) {
+        successful = false;
+      }
+    }
+
+    JobPosting getPosting() {
+      return posting;
+    }
+
+    /**
+     * we got the description page and the posting has been filled in from it. Always true for
+     * postings that don't need their description page.
+     */
+    boolean isParsed() {
+      return successful;
+    }
+  }
+}
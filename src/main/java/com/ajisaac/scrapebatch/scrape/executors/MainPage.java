@@ -0,0 +1,134 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+import com.ajisaac.scrapebatch.dto.DatabaseService;
+import com.ajisaac.scrapebatch.dto.PageValidator;
+import com.ajisaac.scrapebatch.network.CacheValidators;
+import com.ajisaac.scrapebatch.network.CancellationToken;
+import com.ajisaac.scrapebatch.network.FetchEngine;
+import com.ajisaac.scrapebatch.network.FetchResult;
+import com.ajisaac.scrapebatch.network.PageGrabber;
+import com.ajisaac.scrapebatch.network.Politeness;
+import com.google.common.hash.Hashing;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A main page fetched with the validators from the last run. If the server says it hasn't changed,
+ * or it comes back byte for byte the same, there is nothing new on it and the executor can skip
+ * parsing and deduping it altogether.
+ */
+class MainPage {
+
+  /**
+   * How many times a run asks for a main page that keeps failing in a way that may go away before
+   * it gives up on the site. Every one of these is retried by the fetch engine already, so this
+   * only covers a site that is down for longer than its retries take.
+   */
+  static final int MAX_ATTEMPTS =
+    Math.max(1, ConfigProvider.getConfig().getOptionalValue("scrape.executor.main-page-attempts", Integer.class).orElse(2));
+
+  private final URI uri;
+  private final FetchResult result;
+  private final String contentHash;
+  private final boolean unchanged;
+
+  private MainPage(URI uri, FetchResult result, String contentHash, boolean unchanged) {
+    this.uri = uri;
+    this.result = result;
+    this.contentHash = contentHash;
+    this.unchanged = unchanged;
+  }
+
+  /**
+   * the archived copy of the main page, it is never considered unchanged and never remembered
+   */
+  static MainPage replay(URI uri) {
+    String body = PageGrabber.replayPage(uri.toString());
+    FetchResult result = body == null
+      ? FetchResult.failed(uri, 0)
+      : new FetchResult(uri, 200, body, 0, null);
+    return new MainPage(uri, result, null, false);
+  }
+
+  static MainPage fetch(URI uri, Politeness politeness, DatabaseService db, CancellationToken token) {
+    return fetchAsync(uri, politeness, db, token).join();
+  }
+
+  /**
+   * Start fetching the main page. The validators are looked up before this returns, so the
+   * database is only ever touched from the calling thread. The future never fails, a page we
+   * couldn't get, or gave up on because the token was cancelled, comes back with a null body.
+   */
+  static CompletableFuture<MainPage> fetchAsync(URI uri, Politeness politeness, DatabaseService db,
+                                                CancellationToken token) {
+    var known = db.getPageValidator(uri.toString());
+    CacheValidators validators = known == null ? null : known.toCacheValidators();
+    return FetchEngine.getInstance().fetchAsync(uri, politeness, validators, token)
+      .exceptionally(e -> FetchResult.failed(uri, 0))
+      .thenApply(result -> of(uri, result, known));
+  }
+
+  private static MainPage of(URI uri, FetchResult result, PageValidator known) {
+    if (result.isNotModified())
+      return new MainPage(uri, result, null, true);
+
+    String body = result.getBody();
+    if (!result.isSuccessful() || body == null || body.isBlank())
+      return new MainPage(uri, result, null, false);
+
+    String hash = Hashing.sha256().hashString(body, StandardCharsets.UTF_8).toString();
+    boolean sameContent = known != null && hash.equals(known.getContentHash());
+    return new MainPage(uri, result, hash, sameContent);
+  }
+
+  long getLatencyMillis() {
+    return result.getLatencyMillis();
+  }
+
+  /**
+   * size of the page we got, nothing for one that hasn't changed or that we couldn't get
+   */
+  long getBytes() {
+    String body = getBody();
+    return body == null ? 0 : body.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  /**
+   * nothing changed since the last run that made it all the way through this page
+   */
+  boolean isUnchanged() {
+    return unchanged;
+  }
+
+  /**
+   * the page html, null if we couldn't get it
+   */
+  String getBody() {
+    if (unchanged || !result.isSuccessful())
+      return null;
+    String body = result.getBody();
+    return body == null || body.isBlank() ? null : body;
+  }
+
+  /**
+   * we couldn't get the page, but might if we asked again. A page that isn't there or came back
+   * empty will be the same next time.
+   */
+  boolean isRetryable() {
+    return !unchanged && result.isRetryable();
+  }
+
+  /**
+   * Store the validators so the next run can skip this page. Only call this once every posting on
+   * the page has been handled, otherwise postings we never got to would be skipped next time too.
+   */
+  void remember(DatabaseService db) {
+    if (unchanged || contentHash == null)
+      return;
+    CacheValidators validators = result.getValidators();
+    db.storePageValidator(uri.toString(), validators.getEtag(), validators.getLastModified(), contentHash);
+  }
+}
@@ -2,15 +2,28 @@ package com.ajisaac.scrapebatch.scrape.executors;
 
 import com.ajisaac.scrapebatch.dto.DatabaseService;
 import com.ajisaac.scrapebatch.dto.JobPosting;
-import com.ajisaac.scrapebatch.network.PageGrabber;
+import com.ajisaac.scrapebatch.dto.ScrapeCheckpoint;
+import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.network.CancellationToken;
+import com.ajisaac.scrapebatch.network.StreamedPage;
 import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.CircuitBreaker;
 import com.ajisaac.scrapebatch.scrape.CleanseDescription;
+import com.ajisaac.scrapebatch.scrape.scrapers.PagedScraper;
 import com.ajisaac.scrapebatch.scrape.scrapers.Scraper;
+import org.eclipse.microprofile.config.ConfigProvider;
 
 import javax.inject.Inject;
+import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -19,14 +32,48 @@ import java.util.concurrent.TimeUnit;
  */
 public class MultiPageScrapingExecutor implements ScrapingExecutor {
 
+  /**
+   * how many main pages past the current one are fetched early for scrapers that can tell us their
+   * urls up front, 0 to fetch them one at a time
+   */
+  static final int MAIN_PAGE_LOOKAHEAD = Math.max(0,
+    ConfigProvider.getConfig().getOptionalValue("scrape.executor.main-page-lookahead", Integer.class).orElse(2));
+
+  /**
+   * how often a running scrape writes its checkpoint, and how old one may be to still resume from
+   */
+  static final long CHECKPOINT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(
+    ConfigProvider.getConfig().getOptionalValue("scrape.checkpoint.interval-seconds", Long.class).orElse(30L));
+  static final long CHECKPOINT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(
+    ConfigProvider.getConfig().getOptionalValue("scrape.checkpoint.max-age-hours", Long.class).orElse(12L));
+
+  /**
+   * hand description pages to the shared queue in the database instead of fetching them here, so
+   * every running instance works through them
+   */
+  static final boolean QUEUE_DESCRIPTIONS =
+    ConfigProvider.getConfig().getOptionalValue("scrape.queue.enabled", Boolean.class).orElse(false);
+  // same as the queue workers', a task out of attempts is queued again when its posting shows up
+  private static final int QUEUE_MAX_ATTEMPTS =
+    Math.max(1, ConfigProvider.getConfig().getOptionalValue("scrape.queue.max-attempts", Integer.class).orElse(3));
+
   private final Scraper scraper;
   //  @Inject
   DatabaseService db;
   private WebsocketNotifier notifier;
   private final String name;
-  private static final int PAUSE_TIME = 10;
 
-  private boolean stopped = false;
+  private final CancellationToken cancellation = new CancellationToken();
+  // the site's breaker as the run now going sees it
+  private SiteCircuit circuit;
+  private int maxInFlight = DescriptionPageFetcher.DEFAULT_MAX_IN_FLIGHT;
+  private boolean replay = false;
+  private boolean resume = false;
+  private int newPostings = 0;
+  private final RunStats stats = new RunStats();
+  // main pages of a PagedScraper already on their way, the head is the page at mainPageIndex
+  private final Deque<CompletableFuture<MainPage>> ahead = new ArrayDeque<>();
+  private int mainPageIndex = 0;
 
   public MultiPageScrapingExecutor(Scraper scraper) {
     this.scraper = scraper;
@@ -37,92 +84,327 @@ public class MultiPageScrapingExecutor implements ScrapingExecutor {
     this.db = db;
   }
 
+  @Override
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  @Override
+  public void setReplay(boolean replay) {
+    this.replay = replay;
+  }
+
+  @Override
+  public void setResume(boolean resume) {
+    this.resume = resume;
+  }
+
   @Override
   public void setWebsocketNotifier(WebsocketNotifier notifier) {
     this.notifier = notifier;
   }
 
   public void scrape() {
+    circuit = new SiteCircuit(CircuitBreaker.forSite(scraper.getJobSite()), scraper.getJobSite().name(),
+      this.name, notifier, replay);
+    PagedScraper paged = scraper instanceof PagedScraper ? (PagedScraper) scraper : null;
+    Watermark watermark = new Watermark(scraper.getScrapeJob());
+    // every posting up to where we stopped was handled
+    boolean complete = true;
+    // we got to the end rather than giving up on the site, so the checkpoint can go
+    boolean ranToEnd = true;
+
+    // only paged scrapers can jump straight to a page, so only they keep checkpoints
+    ScrapeJob scrapeJob = scraper.getScrapeJob();
+    boolean checkpointing = paged != null && !replay && scrapeJob != null;
+    Set<String> resumeHrefs = checkpointing && resume ? resumeFromCheckpoint(scrapeJob) : null;
+    boolean queueing = QUEUE_DESCRIPTIONS && !replay && scrapeJob != null;
+    if (resumeHrefs != null) {
+      // the newest posting of this run is somewhere down the listing, it makes no watermark
+      complete = false;
+    }
+    long lastCheckpoint = 0;
+    // times in a row we asked for the current main page and didn't get it
+    int pageAttempts = 0;
 
     while (true) {
-      if (stopped) {
+      if (cancellation.isCancelled()) {
         notifier.send("Received signal to stop", this.name);
         return;
       }
-      pause(PAUSE_TIME);
       // get the page to scrape
-      URI uri = scraper.getNextMainPageURI();
+      URI uri = paged == null ? scraper.getNextMainPageURI() : currentPage(paged);
       if (uri == null) {
         break;
       }
+      if (circuit.isOpen()) {
+        complete = false;
+        ranToEnd = false;
+        break;
+      }
+      int pageIndex = mainPageIndex;
 
       notifier.scrapingMainPage(uri.toString(), this.name);
-      String mainPage = PageGrabber.grabPage(uri);
+      MainPage page = paged == null ? fetchMainPage(uri).join() : ahead.poll().join();
+      if (cancellation.isCancelled()) {
+        notifier.send("Received signal to stop", this.name);
+        return;
+      }
+      if (page.isUnchanged()) {
+        circuit.pageSucceeded();
+        stats.mainPage(0, page.getLatencyMillis());
+        // the scraper only moves on to the next page by parsing this one, so we stop here
+        notifier.send("Main page " + uri + " hasn't changed since the last run, stopping.", this.name);
+        break;
+      }
+
+      String mainPage = page.getBody();
       if (mainPage == null) {
         notifier.failMainPageScrape(uri.toString(), this.name);
-        break;
+        stats.failed();
+        if (circuit.pageFailed() || replay || !page.isRetryable() || ++pageAttempts >= MainPage.MAX_ATTEMPTS) {
+          complete = false;
+          ranToEnd = false;
+          break;
+        }
+        // the scraper only moves on by parsing the page, so this goes for the same page again
+        if (paged != null)
+          ahead.addFirst(fetchMainPage(uri));
+        continue;
       }
+      circuit.pageSucceeded();
+      pageAttempts = 0;
+      stats.mainPage(page.getBytes(), page.getLatencyMillis());
 
       notifier.successfulMainPageScrape(uri.toString(), this.name);
+      long parseStart = System.nanoTime();
       List<JobPosting> jobPostings = scraper.parseMainPage(mainPage);
+      stats.parsed(System.nanoTime() - parseStart);
       notifier.foundPostings(jobPostings.size(), this.name, uri.toString());
+      mainPageIndex++;
+      if (jobPostings.isEmpty()) {
+        // we've run off the end of the listing
+        break;
+      }
 
+      boolean caughtUp = watermark.reached(jobPostings);
+
+      int found = jobPostings.size();
       jobPostings = scraper.removeJobPostingsBasedOnHref(jobPostings, db);
+      stats.found(found, found - jobPostings.size());
+      newPostings += jobPostings.size();
       notifier.send("Found " + jobPostings.size() + " non duplicate postings from " + uri + " for " + this.name, this.name);
+      caughtUp |= jobPostings.isEmpty();
 
-      for (JobPosting jobPosting : jobPostings) {
-        if (stopped) {
-          notifier.send("Received signal to stop", this.name);
-          return;
-        }
-        if (jobPosting == null)
-          continue;
+      if (resumeHrefs != null) {
+        Set<String> pending = resumeHrefs;
+        if (!pending.isEmpty())
+          jobPostings.removeIf(jobPosting -> !pending.contains(jobPosting.getHref()));
+        resumeHrefs = null;
+      }
+      // queued postings aren't stored yet, and may never be, so this page isn't done with
+      boolean queued = false;
+      if (queueing) {
+        int before = jobPostings.size();
+        jobPostings = queueDescriptions(scrapeJob, jobPostings, uri);
+        queued = jobPostings.size() < before;
+      }
+      Set<String> pendingHrefs = new LinkedHashSet<>();
+      jobPostings.forEach(jobPosting -> pendingHrefs.add(jobPosting.getHref()));
+      if (checkpointing) {
+        db.storeCheckpoint(scrapeJob.getId(), pageIndex, new ArrayList<>(pendingHrefs));
+        lastCheckpoint = System.currentTimeMillis();
+      }
 
-        pause(PAUSE_TIME);
-        notifier.scrapingDescPage(jobPosting.getHref(), this.name);
+      // the next few main pages load while we work through this one's description pages
+      if (paged != null && !caughtUp)
+        lookAhead(paged);
 
-        String jobDescriptionPage = PageGrabber.grabPage(jobPosting.getHref());
-        if (jobDescriptionPage == null || jobDescriptionPage.isBlank()) {
-          notifier.failedDescPageScrape(jobPosting.getHref(), this.name);
-          continue;
-        }
+      boolean allScraped = true;
+      try (var fetcher = new DescriptionPageFetcher(jobPostings, maxInFlight,
+        DescriptionPageFetcher.pageSource(replay, scraper.getPoliteness(), cancellation),
+        this::parseDescription,
+        stats,
+        jobPosting -> notifier.scrapingDescPage(jobPosting.getHref(), this.name),
+        cancellation)) {
 
-        scraper.parseJobDescriptionPage(jobDescriptionPage, jobPosting);
+        while (fetcher.hasNext()) {
+          DescriptionPageFetcher.FetchedPage fetched;
+          try {
+            fetched = fetcher.next();
+          } catch (InterruptedException e) {
+            notifier.error(e, this.name);
+            return;
+          }
+          // a stop abandons whatever was in flight, those pages didn't fail
+          if (cancellation.isCancelled()) {
+            notifier.send("Received signal to stop", this.name);
+            return;
+          }
+          if (fetched == null)
+            continue;
 
-        var desc = jobPosting.getDescription();
-        if (desc != null) {
-          desc = CleanseDescription.cleanse(desc);
-          jobPosting.setDescription(desc);
-        }
+          JobPosting jobPosting = fetched.getPosting();
+          if (!fetched.isParsed()) {
+            notifier.failedDescPageScrape(jobPosting.getHref(), this.name);
+            stats.failed();
+            allScraped = false;
+            if (circuit.pageFailed())
+              return;
+            continue;
+          }
+          circuit.pageSucceeded();
+
+          notifier.successfulDescPageScrape(jobPosting, this.name);
 
-        notifier.successfulDescPageScrape(jobPosting, this.name);
+          jobPosting.setJobSite(scraper.getJobSite().name());
+          jobPosting.setScraperName(this.scraper.getName());
+          jobPosting.setStatus("new");
 
-        jobPosting.setJobSite(scraper.getJobSite().name());
-        jobPosting.setScraperName(this.scraper.getName());
-        jobPosting.setStatus("new");
+          long persistStart = System.nanoTime();
+          db.storeJobPostingInDatabase(jobPosting);
+          stats.stored(System.nanoTime() - persistStart);
 
-        db.storeJobPostingInDatabase(jobPosting);
+          pendingHrefs.remove(jobPosting.getHref());
+          if (checkpointing && System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL_MILLIS) {
+            db.storeCheckpoint(scrapeJob.getId(), pageIndex, new ArrayList<>(pendingHrefs));
+            lastCheckpoint = System.currentTimeMillis();
+          }
+        }
       }
 
+      if (allScraped && !queued)
+        page.remember(db);
+      else
+        complete = false;
+
+      if (caughtUp) {
+        notifier.send("Caught up with earlier runs on " + uri + ", stopping.", this.name);
+        break;
+      }
       if (!scraper.moreResults()) {
         break;
       }
     }
+
+    if (complete && !replay)
+      watermark.store(db);
+    if (checkpointing && ranToEnd)
+      db.deleteCheckpoint(scrapeJob.getId());
+  }
+
+  /**
+   * queue the postings that need their description page for the queue workers
+   *
+   * @return the postings that don't, they are stored here as usual
+   */
+  private List<JobPosting> queueDescriptions(ScrapeJob scrapeJob, List<JobPosting> jobPostings, URI uri) {
+    List<JobPosting> queue = new ArrayList<>();
+    List<JobPosting> rest = new ArrayList<>();
+    for (JobPosting jobPosting : jobPostings) {
+      if (jobPosting == null || jobPosting.isIgnoreScrapeDescriptionPage()) {
+        rest.add(jobPosting);
+        continue;
+      }
+      jobPosting.setJobSite(scraper.getJobSite().name());
+      jobPosting.setScraperName(this.scraper.getName());
+      jobPosting.setStatus("new");
+      queue.add(jobPosting);
+    }
+    int queued = db.enqueueDescriptionTasks(scrapeJob.getId(), queue, QUEUE_MAX_ATTEMPTS);
+    notifier.send("Queued " + queued + " description pages from " + uri + " for " + this.name, this.name);
+    return rest;
+  }
+
+  /**
+   * move to the page the job's last unfinished run was on
+   *
+   * @return the hrefs it still had to do on that page, null if there is nothing to resume
+   */
+  private Set<String> resumeFromCheckpoint(ScrapeJob scrapeJob) {
+    ScrapeCheckpoint checkpoint = db.getCheckpoint(scrapeJob.getId());
+    if (checkpoint == null)
+      return null;
+    // the listing has moved on too far for the page number to mean much
+    if (System.currentTimeMillis() - checkpoint.getUpdatedAt() > CHECKPOINT_MAX_AGE_MILLIS)
+      return null;
+
+    mainPageIndex = checkpoint.getPageIndex();
+    Set<String> pending = new HashSet<>(checkpoint.getPendingHrefList());
+    notifier.send("Resuming from main page " + (mainPageIndex + 1) + " with " + pending.size()
+      + " postings left on it.", this.name);
+    return pending;
+  }
+
+  /**
+   * makes sure the current main page is being fetched, if it isn't already from an earlier look
+   * ahead
+   *
+   * @return the url of the current main page, null if the scraper has none
+   */
+  private URI currentPage(PagedScraper paged) {
+    URI uri = paged.getMainPageURI(mainPageIndex);
+    if (uri != null && ahead.isEmpty())
+      ahead.add(fetchMainPage(uri));
+    return uri;
+  }
+
+  /**
+   * Makes sure the next main page and the MAIN_PAGE_LOOKAHEAD pages after it are being fetched.
+   * Only called once a page has shown we aren't caught up yet, so a run with nothing new fetches
+   * its first page and no more. Pages we end up not needing, because the listing ran out or
+   * hadn't changed, are simply dropped.
+   */
+  private void lookAhead(PagedScraper paged) {
+    while (ahead.size() <= MAIN_PAGE_LOOKAHEAD) {
+      URI next = paged.getMainPageURI(mainPageIndex + ahead.size());
+      if (next == null)
+        break;
+      ahead.add(fetchMainPage(next));
+    }
+  }
+
+  private CompletableFuture<MainPage> fetchMainPage(URI uri) {
+    if (replay)
+      return CompletableFuture.completedFuture(MainPage.replay(uri));
+    return MainPage.fetchAsync(uri, scraper.getPoliteness(), db, cancellation);
+  }
+
+  /**
+   * parse the description page straight off the wire, runs on the fetcher's parser threads
+   */
+  private void parseDescription(StreamedPage jobDescriptionPage, JobPosting jobPosting) throws IOException {
+    scraper.parseJobDescriptionPage(jobDescriptionPage.getBody(), jobPosting.getHref(), jobPosting);
+    cleanse(jobPosting);
+  }
+
+  @Override
+  public int getNewPostings() {
+    return newPostings;
   }
 
   @Override
-  public synchronized void stopScraping() {
-    this.stopped = true;
-  }
-
-  private void pause(int maxSeconds) {
-    try {
-      int r = ThreadLocalRandom.current().nextInt(maxSeconds) + 1;
-      notifier.sleeping(r, this.name);
-      TimeUnit.SECONDS.sleep(r);
-    } catch (InterruptedException e) {
-      notifier.error(e, this.name);
-      e.printStackTrace();
+  public RunStats getRunStats() {
+    return stats;
+  }
+
+  @Override
+  public void parseDescription(JobPosting jobPosting, String jobDescriptionPage) {
+    scraper.parseJobDescriptionPage(jobDescriptionPage, jobPosting);
+    cleanse(jobPosting);
+  }
+
+  private void cleanse(JobPosting jobPosting) {
+    var desc = jobPosting.getDescription();
+    if (desc != null) {
+      desc = CleanseDescription.cleanse(desc);
+      jobPosting.setDescription(desc);
     }
   }
+
+  @Override
+  public void stopScraping() {
+    stats.stopped();
+    cancellation.cancel();
+  }
 }
@@ -0,0 +1,341 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+import com.ajisaac.scrapebatch.dto.DatabaseService;
+import com.ajisaac.scrapebatch.dto.JobPosting;
+import com.ajisaac.scrapebatch.network.CancellationToken;
+import com.ajisaac.scrapebatch.network.FetchEngine;
+import com.ajisaac.scrapebatch.network.FetchResult;
+import com.ajisaac.scrapebatch.network.PageGrabber;
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.CircuitBreaker;
+import com.ajisaac.scrapebatch.scrape.CleanseDescription;
+import com.ajisaac.scrapebatch.scrape.scrapers.Scraper;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scrapes a site spread across multiple pages like MultiPageScrapingExecutor does, but as a
+ * pipeline so fetching, parsing and writing to the database overlap:
+ *
+ * <pre>
+ *   main pages -> fetch -> parse -> cleanse -> persist
+ * </pre>
+ *
+ * Postings are deduped before they are queued, by the scraper, so a posting listed twice never
+ * has its description page fetched twice.
+ *
+ * Every stage has its own bounded queue and workers. When the database falls behind the queues
+ * fill up back to the main page loop, which then waits before reading more postings. Stage
+ * numbers are available while it runs through getStageStats().
+ */
+public class PipelineScrapingExecutor implements ScrapingExecutor {
+
+  /**
+   * whether multi page sites are scraped with this executor instead of MultiPageScrapingExecutor
+   */
+  public static final boolean ENABLED =
+    ConfigProvider.getConfig().getOptionalValue("scrape.executor.pipeline", Boolean.class).orElse(false);
+
+  private final Scraper scraper;
+  private final String name;
+
+  DatabaseService db;
+  private WebsocketNotifier notifier;
+
+  private final CancellationToken cancellation = new CancellationToken();
+  // the site's breaker as the run now going sees it
+  private SiteCircuit circuit;
+  private volatile boolean siteDown = false;
+  private volatile boolean failures = false;
+  private int maxInFlight = DescriptionPageFetcher.DEFAULT_MAX_IN_FLIGHT;
+  private boolean replay = false;
+  private volatile int newPostings = 0;
+  private final RunStats stats = new RunStats();
+  private volatile List<PipelineStage<Item>> stages = List.of();
+
+  public PipelineScrapingExecutor(Scraper scraper) {
+    this.scraper = scraper;
+    this.name = scraper.getName();
+  }
+
+  @Override
+  public void setDb(DatabaseService db) {
+    this.db = db;
+  }
+
+  @Override
+  public void setWebsocketNotifier(WebsocketNotifier notifier) {
+    this.notifier = notifier;
+  }
+
+  /**
+   * how many fetch workers the pipeline runs
+   */
+  @Override
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  @Override
+  public void setReplay(boolean replay) {
+    this.replay = replay;
+  }
+
+  @Override
+  public void setResume(boolean resume) {
+    // postings are spread over several stages at once, there is no single point to resume from
+  }
+
+  @Override
+  public void scrape() {
+    circuit = new SiteCircuit(CircuitBreaker.forSite(scraper.getJobSite()), scraper.getJobSite().name(),
+      this.name, notifier, replay);
+    int capacity = Math.max(4, maxInFlight * 2);
+    var fetch = new PipelineStage<Item>("fetch", maxInFlight, capacity, this::fetch);
+    var parse = new PipelineStage<Item>("parse", Runtime.getRuntime().availableProcessors(), capacity, this::parse);
+    var cleanse = new PipelineStage<Item>("cleanse", 1, capacity, this::cleanse);
+    var persist = new PipelineStage<Item>("persist", 1, capacity, this::persist);
+    fetch.then(parse).then(cleanse).then(persist);
+    stages = List.of(fetch, parse, cleanse, persist);
+    stages.forEach(stage -> stage.start(this.name));
+
+    List<MainPage> mainPages = new ArrayList<>();
+    Watermark watermark = new Watermark(scraper.getScrapeJob());
+    boolean walked;
+    boolean drained = false;
+    try {
+      walked = feedMainPages(fetch, mainPages, watermark);
+      fetch.finish();
+      persist.await();
+      drained = true;
+    } catch (InterruptedException e) {
+      notifier.error(e, this.name);
+      return;
+    } finally {
+      // we didn't get to wait for the stages, don't leave their workers blocked on the queues
+      if (!drained) {
+        cancellation.cancel();
+        stages.forEach(PipelineStage::cancel);
+      }
+    }
+
+    for (PipelineStage<Item> stage : stages)
+      notifier.send(stage.stats().toString(), this.name);
+
+    // a failed posting needs another look next time, so only then may we skip the pages
+    if (!failures && !halted()) {
+      mainPages.forEach(page -> page.remember(db));
+      if (walked && !replay)
+        watermark.store(db);
+    }
+    notifier.send("Finished Scraping " + this.name + ".", this.name);
+  }
+
+  /**
+   * walks the main pages and queues their postings, blocking whenever the pipeline is full
+   *
+   * @return false if we gave up before the end of the listing or catching up with earlier runs
+   */
+  private boolean feedMainPages(PipelineStage<Item> fetch, List<MainPage> mainPages, Watermark watermark)
+    throws InterruptedException {
+    // times in a row we asked for the current main page and didn't get it
+    int pageAttempts = 0;
+    while (true) {
+      if (cancellation.isCancelled()) {
+        notifier.send("Received signal to stop", this.name);
+        return false;
+      }
+      if (siteDown)
+        return false;
+      URI uri = scraper.getNextMainPageURI();
+      if (uri == null)
+        return true;
+      if (circuit.isOpen())
+        return false;
+
+      notifier.scrapingMainPage(uri.toString(), this.name);
+      MainPage page = replay ? MainPage.replay(uri) : MainPage.fetch(uri, scraper.getPoliteness(), db, cancellation);
+      if (cancellation.isCancelled())
+        continue;
+      if (page.isUnchanged()) {
+        circuit.pageSucceeded();
+        stats.mainPage(0, page.getLatencyMillis());
+        notifier.send("Main page " + uri + " hasn't changed since the last run, stopping.", this.name);
+        return true;
+      }
+
+      String mainPage = page.getBody();
+      if (mainPage == null) {
+        notifier.failMainPageScrape(uri.toString(), this.name);
+        stats.failed();
+        if (circuit.pageFailed() || replay || !page.isRetryable() || ++pageAttempts >= MainPage.MAX_ATTEMPTS)
+          return false;
+        // the scraper only moves on by parsing the page, so this goes for the same page again
+        continue;
+      }
+      circuit.pageSucceeded();
+      pageAttempts = 0;
+      stats.mainPage(page.getBytes(), page.getLatencyMillis());
+      mainPages.add(page);
+
+      notifier.successfulMainPageScrape(uri.toString(), this.name);
+      long parseStart = System.nanoTime();
+      List<JobPosting> jobPostings = scraper.parseMainPage(mainPage);
+      stats.parsed(System.nanoTime() - parseStart);
+      notifier.foundPostings(jobPostings.size(), this.name, uri.toString());
+      if (jobPostings.isEmpty())
+        return true;
+      boolean caughtUp = watermark.reached(jobPostings);
+
+      int found = jobPostings.size();
+      jobPostings = scraper.removeJobPostingsBasedOnHref(jobPostings, db);
+      stats.found(found, found - jobPostings.size());
+      newPostings += jobPostings.size();
+      notifier.send("Found " + jobPostings.size() + " non duplicate postings from " + uri + " for " + this.name, this.name);
+
+      for (JobPosting jobPosting : jobPostings)
+        if (jobPosting != null)
+          fetch.put(new Item(jobPosting));
+
+      if (caughtUp || jobPostings.isEmpty()) {
+        notifier.send("Caught up with earlier runs on " + uri + ", stopping.", this.name);
+        return true;
+      }
+      if (!scraper.moreResults())
+        return true;
+    }
+  }
+
+  private Item fetch(Item item) {
+    if (halted())
+      return null;
+
+    String href = item.posting.getHref();
+    notifier.scrapingDescPage(href, this.name);
+    FetchResult result = fetchPage(href);
+    if (halted())
+      return null;
+    String page = result.isSuccessful() ? result.getBody() : null;
+    if (page == null || page.isBlank()) {
+      failures = true;
+      notifier.failedDescPageScrape(href, this.name);
+      stats.failed();
+      if (circuit.pageFailed())
+        siteDown = true;
+      return null;
+    }
+    circuit.pageSucceeded();
+    stats.descriptionPage(page.getBytes(StandardCharsets.UTF_8).length, result.getLatencyMillis());
+    item.page = page;
+    return item;
+  }
+
+  /**
+   * the description page from the archive or the live site, the result carries the request's latency
+   */
+  private FetchResult fetchPage(String href) {
+    if (replay) {
+      String page = PageGrabber.replayPage(href);
+      return page == null ? FetchResult.failed(null, 0) : new FetchResult(null, 200, page, 0, null);
+    }
+    try {
+      return FetchEngine.getInstance().fetchAsync(new URI(href), scraper.getPoliteness(), null, cancellation).join();
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return FetchResult.failed(null, 0);
+    }
+  }
+
+  private Item parse(Item item) {
+    if (halted())
+      return null;
+    long start = System.nanoTime();
+    scraper.parseJobDescriptionPage(item.page, item.posting);
+    stats.parsed(System.nanoTime() - start);
+    // the page isn't needed past here, don't keep it queued
+    item.page = null;
+    return item;
+  }
+
+  private Item cleanse(Item item) {
+    if (halted())
+      return null;
+    cleanseDescription(item.posting);
+    return item;
+  }
+
+  private void cleanseDescription(JobPosting jobPosting) {
+    var desc = jobPosting.getDescription();
+    if (desc != null)
+      jobPosting.setDescription(CleanseDescription.cleanse(desc));
+  }
+
+  private Item persist(Item item) {
+    if (halted())
+      return null;
+    JobPosting jobPosting = item.posting;
+    jobPosting.setJobSite(scraper.getJobSite().name());
+    jobPosting.setScraperName(this.scraper.getName());
+    jobPosting.setStatus("new");
+    long start = System.nanoTime();
+    db.storeJobPostingInDatabase(jobPosting);
+    stats.stored(System.nanoTime() - start);
+    notifier.successfulDescPageScrape(jobPosting, this.name);
+    return item;
+  }
+
+  /**
+   * the user stopped us or the site's circuit breaker opened, whatever is still queued is dropped
+   */
+  private boolean halted() {
+    return cancellation.isCancelled() || siteDown;
+  }
+
+  /**
+   * queue depths and throughput of every stage, empty before the run starts
+   */
+  public List<StageStats> getStageStats() {
+    List<StageStats> stats = new ArrayList<>();
+    for (PipelineStage<Item> stage : stages)
+      stats.add(stage.stats());
+    return stats;
+  }
+
+  @Override
+  public int getNewPostings() {
+    return newPostings;
+  }
+
+  @Override
+  public RunStats getRunStats() {
+    return stats;
+  }
+
+  @Override
+  public void parseDescription(JobPosting jobPosting, String jobDescriptionPage) {
+    scraper.parseJobDescriptionPage(jobDescriptionPage, jobPosting);
+    cleanseDescription(jobPosting);
+  }
+
+  @Override
+  public void stopScraping() {
+    stats.stopped();
+    cancellation.cancel();
+  }
+
+  /**
+   * a posting on its way through the pipeline along with its description page
+   */
+  private static class Item {
+    private final JobPosting posting;
+    private String page;
+
+    Item(JobPosting posting) {
+      this.posting = posting;
+    }
+  }
+}
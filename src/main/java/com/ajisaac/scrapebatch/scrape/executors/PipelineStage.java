@@ -0,0 +1,152 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+import com.ajisaac.scrapebatch.network.ScrapeThreads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One step of a PipelineScrapingExecutor: a bounded queue in front of a few worker threads. The
+ * workers hand what they produce to the next stage, blocking while its queue is full, so a slow
+ * stage holds up everything before it instead of letting work pile up in memory.
+ */
+class PipelineStage<T> {
+
+  /**
+   * does the stage's work on one item, null drops the item
+   */
+  interface Work<T> {
+    T apply(T item) throws Exception;
+  }
+
+  // tells a worker there is nothing more coming
+  private static final Object END = new Object();
+
+  private final String name;
+  private final int workers;
+  private final Work<T> work;
+  private final BlockingQueue<Object> queue;
+  private final AtomicInteger running = new AtomicInteger();
+  private final CountDownLatch finished;
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong busyNanos = new AtomicLong();
+  private volatile long startedAt = 0;
+  // guarded by itself
+  private final List<Thread> threads = new ArrayList<>();
+  private PipelineStage<T> next;
+
+  PipelineStage(String name, int workers, int capacity, Work<T> work) {
+    this.name = name;
+    this.workers = Math.max(1, workers);
+    this.work = work;
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    this.finished = new CountDownLatch(this.workers);
+  }
+
+  /**
+   * where this stage's output goes, the last stage has none
+   */
+  PipelineStage<T> then(PipelineStage<T> next) {
+    this.next = next;
+    return next;
+  }
+
+  void start(String threadName) {
+    startedAt = System.nanoTime();
+    running.set(workers);
+    ThreadFactory threads = ScrapeThreads.factory(threadName + "-" + name);
+    for (int i = 0; i < workers; i++) {
+      Thread thread = threads.newThread(this::work);
+      synchronized (this.threads) {
+        this.threads.add(thread);
+      }
+      thread.start();
+    }
+  }
+
+  /**
+   * queue an item, blocks while the stage is full
+   */
+  void put(T item) throws InterruptedException {
+    queue.put(item);
+  }
+
+  /**
+   * no more items are coming, the workers stop once they have worked through the queue
+   */
+  void finish() throws InterruptedException {
+    for (int i = 0; i < workers; i++)
+      queue.put(END);
+  }
+
+  /**
+   * stop the workers now, whatever is still queued is dropped
+   */
+  void cancel() {
+    synchronized (threads) {
+      threads.forEach(Thread::interrupt);
+    }
+  }
+
+  /**
+   * wait until every worker of this stage is done
+   */
+  void await() throws InterruptedException {
+    finished.await();
+  }
+
+  @SuppressWarnings("unchecked")
+  private void work() {
+    try {
+      while (true) {
+        Object item = queue.take();
+        if (item == END)
+          break;
+
+        long start = System.nanoTime();
+        T out;
+        try {
+          out = work.apply((T) item);
+        } catch (InterruptedException e) {
+          throw e;
+        } catch (Exception e) {
+          out = null;
+        }
+        busyNanos.addAndGet(System.nanoTime() - start);
+
+        if (out == null) {
+          dropped.incrementAndGet();
+          continue;
+        }
+        processed.incrementAndGet();
+        if (next != null)
+          next.put(out);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // the last worker out tells the next stage it is done too
+      if (running.decrementAndGet() == 0 && next != null) {
+        try {
+          next.finish();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      finished.countDown();
+    }
+  }
+
+  StageStats stats() {
+    long elapsed = startedAt == 0 ? 0 : System.nanoTime() - startedAt;
+    return new StageStats(name, workers, queue.size(), queue.size() + queue.remainingCapacity(),
+      processed.get(), dropped.get(), busyNanos.get(), elapsed);
+  }
+}
@@ -0,0 +1,146 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and timings of one scrape run, filled in by the executor as it goes and stored as a
+ * ScrapeRun once it is over. Safe to update from the fetcher's parser threads and the pipeline's
+ * stage workers.
+ *
+ * The fetch, parse and persist times are summed over pages and postings, so with several pages in
+ * flight they can add up to more than the run took.
+ */
+public class RunStats {
+
+  private final LongAdder mainPages = new LongAdder();
+  private final LongAdder descriptionPages = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder postingsFound = new LongAdder();
+  private final LongAdder duplicatesRemoved = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder postingsStored = new LongAdder();
+  private final LongAdder fetchMillis = new LongAdder();
+  private final LongAdder parseNanos = new LongAdder();
+  private final LongAdder persistNanos = new LongAdder();
+  // guarded by itself
+  private final List<Long> pageLatencies = new ArrayList<>();
+  private volatile boolean stopped = false;
+
+  /**
+   * a main page came back, latency is the request's own, not counting politeness waits
+   */
+  void mainPage(long bytes, long latencyMillis) {
+    mainPages.increment();
+    page(bytes, latencyMillis);
+  }
+
+  void descriptionPage(long bytes, long latencyMillis) {
+    descriptionPages.increment();
+    page(bytes, latencyMillis);
+  }
+
+  private void page(long bytes, long latencyMillis) {
+    this.bytes.add(bytes);
+    fetchMillis.add(latencyMillis);
+    synchronized (pageLatencies) {
+      pageLatencies.add(latencyMillis);
+    }
+  }
+
+  /**
+   * postings a main page listed, and how many of those we already had
+   */
+  void found(int postings, int duplicates) {
+    postingsFound.add(postings);
+    duplicatesRemoved.add(duplicates);
+  }
+
+  /**
+   * a page we couldn't get or couldn't parse
+   */
+  void failed() {
+    failures.increment();
+  }
+
+  void parsed(long nanos) {
+    parseNanos.add(nanos);
+  }
+
+  void stored(long nanos) {
+    postingsStored.increment();
+    persistNanos.add(nanos);
+  }
+
+  void stopped() {
+    stopped = true;
+  }
+
+  /**
+   * the user stopped the run before it got to the end
+   */
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  public long getMainPages() {
+    return mainPages.sum();
+  }
+
+  public long getDescriptionPages() {
+    return descriptionPages.sum();
+  }
+
+  /**
+   * decoded size of every page we got
+   */
+  public long getBytes() {
+    return bytes.sum();
+  }
+
+  public long getPostingsFound() {
+    return postingsFound.sum();
+  }
+
+  public long getDuplicatesRemoved() {
+    return duplicatesRemoved.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  public long getPostingsStored() {
+    return postingsStored.sum();
+  }
+
+  public long getFetchMillis() {
+    return fetchMillis.sum();
+  }
+
+  public long getParseMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(parseNanos.sum());
+  }
+
+  public long getPersistMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(persistNanos.sum());
+  }
+
+  /**
+   * latency of the page at the given percentile, 0 to 1, or 0 if we got no pages
+   */
+  public long getPageLatencyPercentile(double percentile) {
+    List<Long> latencies;
+    synchronized (pageLatencies) {
+      latencies = new ArrayList<>(pageLatencies);
+    }
+    if (latencies.isEmpty())
+      return 0;
+    Collections.sort(latencies);
+    int index = (int) Math.ceil(percentile * latencies.size()) - 1;
+    return latencies.get(Math.max(0, Math.min(latencies.size() - 1, index)));
+  }
+}
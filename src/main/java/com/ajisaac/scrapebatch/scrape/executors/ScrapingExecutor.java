@@ -1,6 +1,7 @@
 package com.ajisaac.scrapebatch.scrape.executors;
 
 import com.ajisaac.scrapebatch.dto.DatabaseService;
+import com.ajisaac.scrapebatch.dto.JobPosting;
 import com.ajisaac.scrapebatch.network.WebsocketNotifier;
 
 /** This will take a scraper and execute it */
@@ -11,9 +12,27 @@ public interface ScrapingExecutor {
   /** sets the messaging system for this scraper */
   void setWebsocketNotifier(WebsocketNotifier notifier);
 
+  /** how many description pages are fetched and parsed at once */
+  void setMaxInFlight(int maxInFlight);
+
+  /** read pages from the local page archive instead of the network */
+  void setReplay(boolean replay);
+
+  /** pick up where an unfinished earlier run left off, only paginated sites keep checkpoints */
+  void setResume(boolean resume);
+
+  /** parse a description page into the posting and clean it up, exactly like scrape() would */
+  void parseDescription(JobPosting jobPosting, String jobDescriptionPage);
+
   /** scrape the scrape job site */
   void scrape();
 
-  /** stops scraping */
+  /** how many non duplicate postings the last scrape() found */
+  int getNewPostings();
+
+  /** counts and timings of the scrape() running now, or of the last one */
+  RunStats getRunStats();
+
+  /** stops scraping, requests still waiting or on the wire are abandoned right away */
   void stopScraping();
 }
@@ -2,13 +2,12 @@ package com.ajisaac.scrapebatch.scrape.executors;
 
 import com.ajisaac.scrapebatch.dto.DatabaseService;
 import com.ajisaac.scrapebatch.dto.JobPosting;
-import com.ajisaac.scrapebatch.network.PageGrabber;
+import com.ajisaac.scrapebatch.network.CancellationToken;
 import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.CircuitBreaker;
 import com.ajisaac.scrapebatch.scrape.scrapers.Scraper;
 
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.TimeUnit;
 
 /**
  * This type of class will have the ability to scrape a static non javascript site where all the
@@ -22,7 +21,13 @@ public class SinglePageScrapingExecutor implements ScrapingExecutor {
   DatabaseService databaseService;
   private WebsocketNotifier notifier;
 
-  private boolean stopped = false;
+  private final CancellationToken cancellation = new CancellationToken();
+  // the site's breaker as the run now going sees it
+  private SiteCircuit circuit;
+  private int maxInFlight = DescriptionPageFetcher.DEFAULT_MAX_IN_FLIGHT;
+  private boolean replay = false;
+  private int newPostings = 0;
+  private final RunStats stats = new RunStats();
 
   public SinglePageScrapingExecutor(Scraper scraper) {
     this.scraper = scraper;
@@ -34,6 +39,21 @@ public class SinglePageScrapingExecutor implements ScrapingExecutor {
     this.notifier = notifier;
   }
 
+  @Override
+  public void setMaxInFlight(int maxInFlight) {
+    this.maxInFlight = maxInFlight;
+  }
+
+  @Override
+  public void setReplay(boolean replay) {
+    this.replay = replay;
+  }
+
+  @Override
+  public void setResume(boolean resume) {
+    // a single page is cheap to start over, there is nothing to resume
+  }
+
   @Override
   public void setDb(DatabaseService db) {
     this.databaseService = db;
@@ -41,67 +61,126 @@ public class SinglePageScrapingExecutor implements ScrapingExecutor {
 
   @Override
   public void scrape() {
+    circuit = new SiteCircuit(CircuitBreaker.forSite(scraper.getJobSite()), scraper.getJobSite().name(),
+      this.name, notifier, replay);
     final var href = scraper.getNextMainPageURI();
-    String mainPage = PageGrabber.grabPage(href);
+    if (circuit.isOpen())
+      return;
+
+    MainPage page = replay
+      ? MainPage.replay(href)
+      : MainPage.fetch(href, scraper.getPoliteness(), databaseService, cancellation);
+    if (cancellation.isCancelled()) {
+      notifier.send("Received signal to stop", this.name);
+      return;
+    }
+    if (page.isUnchanged()) {
+      circuit.pageSucceeded();
+      stats.mainPage(0, page.getLatencyMillis());
+      notifier.send("Main page " + href + " hasn't changed since the last run.", this.name);
+      notifier.send("Finished Scraping " + this.name + ".", this.name);
+      return;
+    }
+
+    String mainPage = page.getBody();
     if (mainPage == null) {
       notifier.failMainPageScrape(href.toString(), this.name);
+      stats.failed();
+      circuit.pageFailed();
       return;
     }
+    circuit.pageSucceeded();
+    stats.mainPage(page.getBytes(), page.getLatencyMillis());
 
     notifier.successfulMainPageScrape(href.toString(), this.name);
+    long parseStart = System.nanoTime();
     List<JobPosting> jobPostings = scraper.parseMainPage(mainPage);
+    stats.parsed(System.nanoTime() - parseStart);
     notifier.foundPostings(jobPostings.size(), this.name, href.toString());
 
+    int found = jobPostings.size();
     jobPostings = scraper.removeJobPostingsBasedOnHref(jobPostings, databaseService);
+    stats.found(found, found - jobPostings.size());
+    newPostings = jobPostings.size();
     notifier.send("Found " + jobPostings.size() + " non duplicate postings from " + href + " for " + this.name, this.name);
 
-    for (JobPosting jobPosting : jobPostings) {
-      if (stopped) {
-        notifier.send("Received signal to stop", this.name);
-        return;
-
-      }
-      if (jobPosting == null)
-        continue;
-
-      if (!jobPosting.isIgnoreScrapeDescriptionPage()) {
-        pause(10);
-        notifier.scrapingDescPage(jobPosting.getHref(), this.name);
-        String jobDescriptionPage = PageGrabber.grabPage(jobPosting.getHref());
-        if (jobDescriptionPage == null || jobDescriptionPage.isBlank()) {
-          notifier.failedDescPageScrape(jobPosting.getHref(), this.name);
-          continue;
+    boolean allScraped = true;
+    try (var fetcher = new DescriptionPageFetcher(jobPostings, maxInFlight,
+      DescriptionPageFetcher.pageSource(replay, scraper.getPoliteness(), cancellation),
+      (jobDescriptionPage, jobPosting) ->
+        scraper.parseJobDescriptionPage(jobDescriptionPage.getBody(), jobPosting.getHref(), jobPosting),
+      stats,
+      jobPosting -> notifier.scrapingDescPage(jobPosting.getHref(), this.name),
+      cancellation)) {
+
+      while (fetcher.hasNext()) {
+        DescriptionPageFetcher.FetchedPage fetched;
+        try {
+          fetched = fetcher.next();
+        } catch (InterruptedException e) {
+          notifier.error(e, this.name);
+          return;
+        }
+        // a stop abandons whatever was in flight, those pages didn't fail
+        if (cancellation.isCancelled()) {
+          notifier.send("Received signal to stop", this.name);
+          return;
         }
-        scraper.parseJobDescriptionPage(jobDescriptionPage, jobPosting);
+        if (fetched == null)
+          continue;
 
-        notifier.successfulDescPageScrape(jobPosting, this.name);
-      }
+        JobPosting jobPosting = fetched.getPosting();
+        if (!jobPosting.isIgnoreScrapeDescriptionPage()) {
+          if (!fetched.isParsed()) {
+            notifier.failedDescPageScrape(jobPosting.getHref(), this.name);
+            stats.failed();
+            allScraped = false;
+            if (circuit.pageFailed())
+              return;
+            continue;
+          }
+          circuit.pageSucceeded();
+
+          notifier.successfulDescPageScrape(jobPosting, this.name);
+        }
 
-      scraper.cleanseJobDescription(jobPosting);
+        scraper.cleanseJobDescription(jobPosting);
 
-      jobPosting.setJobSite(this.scraper.getJobSite().name());
-      jobPosting.setScraperName(this.scraper.getName());
-      jobPosting.setStatus("new");
+        jobPosting.setJobSite(this.scraper.getJobSite().name());
+        jobPosting.setScraperName(this.scraper.getName());
+        jobPosting.setStatus("new");
 
-      databaseService.storeJobPostingInDatabase(jobPosting);
+        long persistStart = System.nanoTime();
+        databaseService.storeJobPostingInDatabase(jobPosting);
+        stats.stored(System.nanoTime() - persistStart);
+      }
     }
+
+    // postings that failed need another look next time, so only then may we skip the page
+    if (allScraped)
+      page.remember(databaseService);
     notifier.send("Finished Scraping " + this.name + ".", this.name);
   }
 
   @Override
-  public synchronized void stopScraping() {
-    this.stopped = true;
+  public int getNewPostings() {
+    return newPostings;
   }
 
-  private void pause(int maxSeconds) {
-    try {
-      int r = ThreadLocalRandom.current().nextInt(maxSeconds) + 1;
-      notifier.sleeping(r, this.name);
-      TimeUnit.SECONDS.sleep(r);
-    } catch (InterruptedException e) {
-      notifier.error(e, this.name);
-      e.printStackTrace();
+  @Override
+  public RunStats getRunStats() {
+    return stats;
+  }
 
-    }
+  @Override
+  public void parseDescription(JobPosting jobPosting, String jobDescriptionPage) {
+    scraper.parseJobDescriptionPage(jobDescriptionPage, jobPosting);
+    scraper.cleanseJobDescription(jobPosting);
+  }
+
+  @Override
+  public void stopScraping() {
+    stats.stopped();
+    cancellation.cancel();
   }
 }
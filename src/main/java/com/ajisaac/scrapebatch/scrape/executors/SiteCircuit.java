@@ -0,0 +1,57 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.CircuitBreaker;
+
+/**
+ * One scrape run's side of its site's circuit breaker. Counts the run's pages against it and tells
+ * the user when it opens, closes or turns the run away. A replayed run never goes near the site, so
+ * it never counts and is never turned away.
+ */
+class SiteCircuit {
+
+  private final CircuitBreaker breaker;
+  private final String site;
+  private final String name;
+  private final WebsocketNotifier notifier;
+  private final boolean replay;
+
+  SiteCircuit(CircuitBreaker breaker, String site, String name, WebsocketNotifier notifier, boolean replay) {
+    this.breaker = breaker;
+    this.site = site;
+    this.name = name;
+    this.notifier = notifier;
+    this.replay = replay;
+  }
+
+  /**
+   * count a page we got against the site's circuit breaker
+   */
+  void pageSucceeded() {
+    if (!replay && breaker.recordSuccess())
+      notifier.circuitClosed(site, name);
+  }
+
+  /**
+   * count a page we couldn't get against the site's circuit breaker
+   *
+   * @return true if the breaker is open and we should leave the site alone
+   */
+  boolean pageFailed() {
+    if (replay)
+      return false;
+    if (breaker.recordFailure())
+      notifier.circuitOpened(site, breaker.getRemainingOpen().toSeconds(), name);
+    return breaker.getState() != CircuitBreaker.State.CLOSED;
+  }
+
+  /**
+   * @return true if the breaker is open and we should leave the site alone
+   */
+  boolean isOpen() {
+    if (replay || breaker.allowRequest())
+      return false;
+    notifier.circuitStillOpen(site, breaker.getRemainingOpen().toSeconds(), name);
+    return true;
+  }
+}
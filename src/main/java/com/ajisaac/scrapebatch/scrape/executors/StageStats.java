@@ -0,0 +1,79 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+/**
+ * A snapshot of one pipeline stage. The stage whose workers are busy nearly all the time, with a
+ * full queue in front of it, is the one holding the run up.
+ */
+public class StageStats {
+
+  private final String stage;
+  private final int workers;
+  private final int queueDepth;
+  private final int queueCapacity;
+  private final long processed;
+  private final long dropped;
+  private final long busyNanos;
+  private final long elapsedNanos;
+
+  public StageStats(String stage, int workers, int queueDepth, int queueCapacity, long processed, long dropped,
+                    long busyNanos, long elapsedNanos) {
+    this.stage = stage;
+    this.workers = workers;
+    this.queueDepth = queueDepth;
+    this.queueCapacity = queueCapacity;
+    this.processed = processed;
+    this.dropped = dropped;
+    this.busyNanos = busyNanos;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public String getStage() {
+    return stage;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  /**
+   * items waiting in front of the stage right now
+   */
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public long getProcessed() {
+    return processed;
+  }
+
+  /**
+   * items the stage threw away: failed fetches, duplicates, anything left after a stop
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * items handled per second since the stage started
+   */
+  public double getPerSecond() {
+    return elapsedNanos == 0 ? 0 : (processed + dropped) / (elapsedNanos / 1e9);
+  }
+
+  /**
+   * share of the stage's worker time spent working rather than waiting for items, 0 to 1
+   */
+  public double getUtilization() {
+    return elapsedNanos == 0 ? 0 : Math.min(1, busyNanos / ((double) elapsedNanos * workers));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d/%d queued, %d done, %d dropped, %.1f/s, %.0f%% busy",
+      stage, queueDepth, queueCapacity, processed, dropped, getPerSecond(), getUtilization() * 100);
+  }
+}
@@ -0,0 +1,54 @@
+package com.ajisaac.scrapebatch.scrape.executors;
+
+import com.ajisaac.scrapebatch.dto.DatabaseService;
+import com.ajisaac.scrapebatch.dto.JobPosting;
+import com.ajisaac.scrapebatch.dto.ScrapeJob;
+
+import java.util.List;
+
+/**
+ * The newest posting a scrape job saw last time it ran all the way through. Paginated boards list
+ * newest first, so once a main page shows that posting, or shows nothing but postings we already
+ * have, every page after it is old news and the executor can stop paging.
+ */
+class Watermark {
+
+  private final ScrapeJob scrapeJob;
+  private final String previous;
+  private String newest;
+
+  Watermark(ScrapeJob scrapeJob) {
+    this.scrapeJob = scrapeJob;
+    this.previous = scrapeJob == null ? null : scrapeJob.getWatermarkHref();
+  }
+
+  /**
+   * look at a main page's postings before they are deduped
+   *
+   * @return true if the page holds the newest posting of the last complete run
+   */
+  boolean reached(List<JobPosting> postings) {
+    boolean reached = false;
+    for (JobPosting posting : postings) {
+      if (posting == null || posting.getHref() == null)
+        continue;
+      if (newest == null)
+        newest = posting.getHref();
+      if (posting.getHref().equals(previous))
+        reached = true;
+    }
+    return reached;
+  }
+
+  /**
+   * Store the newest posting of this run for the next one to stop at. Only call this when every
+   * posting up to where we stopped was handled, otherwise the next run would stop short of the
+   * ones we missed.
+   */
+  void store(DatabaseService db) {
+    if (scrapeJob == null || newest == null || newest.equals(previous))
+      return;
+    db.storeWatermark(scrapeJob.getId(), newest);
+    scrapeJob.setWatermarkHref(newest);
+  }
+}
@@ -0,0 +1,16 @@
+package com.ajisaac.scrapebatch.scrape.scrapers;
+
+import java.net.URI;
+
+/**
+ * A scraper whose main pages are numbered, so the url of any page can be worked out up front
+ * instead of only after parsing the page before it. Executors use this to fetch a few main pages
+ * ahead while they are still busy with the description pages of the current one.
+ */
+public interface PagedScraper {
+
+  /**
+   * the url of the main page at the index, 0 being the first page. Null if there is no such url.
+   */
+  URI getMainPageURI(int index);
+}
@@ -6,15 +6,15 @@ import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.http.client.utils.URIBuilder;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 import org.jsoup.select.Elements;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -77,13 +77,20 @@ public class RemotecoScraper extends Scraper {
     if (rel.isBlank()) {
       return null;
     } else {
-      return "https://remote.co" + rel;
+      return resolve(getNextMainPageURI(), rel);
     }
   }
 
   public void parseJobDescriptionPage(String jobDescriptionPage, JobPosting jobPosting) {
+    parseJobDescriptionPage(Jsoup.parse(jobDescriptionPage), jobPosting);
+  }
+
+  @Override
+  public void parseJobDescriptionPage(InputStream page, String href, JobPosting jobPosting) throws IOException {
+    parseJobDescriptionPage(Jsoup.parse(page, null, href), jobPosting);
+  }
 
-    Document document = Jsoup.parse(jobDescriptionPage);
+  private void parseJobDescriptionPage(Document document, JobPosting jobPosting) {
     Element jsonData = document.selectFirst("body>script[type=\"application/ld+json\"]");
     if (jsonData == null) {
       // we still have the URL at least
@@ -189,16 +196,7 @@ public class RemotecoScraper extends Scraper {
   }
 
   public URI getNextMainPageURI() {
-    URIBuilder uriBuilder = new URIBuilder();
-    try {
-      // default values
-      uriBuilder.setScheme("https");
-      uriBuilder.setHost("remote.co");
-      uriBuilder.setPath("remote-jobs/developer");
-      return uriBuilder.build();
-    } catch (URISyntaxException e) {
-      return null;
-    }
+    return startUri("https://remote.co/remote-jobs/developer");
   }
 
 }
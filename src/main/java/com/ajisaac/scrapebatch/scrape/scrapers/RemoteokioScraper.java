@@ -87,7 +87,7 @@ public class RemoteokioScraper extends Scraper {
     Element u = job.selectFirst("[itemprop=url]");
     if (u != null) {
       String url = u.attr("href");
-      jobPosting.setHref("https://remoteok.io" + url);
+      jobPosting.setHref(resolve(getNextMainPageURI(), url));
     }
 
     // location;
@@ -150,7 +150,7 @@ public class RemoteokioScraper extends Scraper {
 
 
   public URI getNextMainPageURI() {
-    return URI.create("https://remoteok.io/remote-dev-jobs");
+    return startUri("https://remoteok.io/remote-dev-jobs");
   }
 
   @Override
@@ -3,15 +3,23 @@ package com.ajisaac.scrapebatch.scrape.scrapers;
 import com.ajisaac.scrapebatch.dto.DatabaseService;
 import com.ajisaac.scrapebatch.dto.JobPosting;
 import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.network.Politeness;
 import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public abstract class Scraper {
 
   protected final ScrapeJob scrapeJob;
+  // hrefs already handed out by this run, the same posting can be listed twice as the listing shifts
+  private final Set<String> seenHrefs = new HashSet<>();
 
   public Scraper(ScrapeJob scrapeJob) {
     this.scrapeJob = scrapeJob;
@@ -30,6 +38,15 @@ public abstract class Scraper {
     // the default does nothing, if we don't need to implement this
   }
 
+  /**
+   * Parse the description page straight from the response stream. The default reads the page into
+   * a string and hands it to parseJobDescriptionPage(String, JobPosting), scrapers that can parse
+   * from a stream should override this.
+   */
+  public void parseJobDescriptionPage(InputStream page, String href, JobPosting jobPosting) throws IOException {
+    parseJobDescriptionPage(new String(page.readAllBytes(), StandardCharsets.UTF_8), jobPosting);
+  }
+
   /**
    * what is the job site of this scraper
    */
@@ -40,6 +57,27 @@ public abstract class Scraper {
    */
   public abstract URI getNextMainPageURI();
 
+  /**
+   * Where the site's listing starts. The scrape job's url when it has one, so a job can point at
+   * another listing of the site or at a copy of it, otherwise the site's usual listing.
+   */
+  protected URI startUri(String defaultUrl) {
+    String url = scrapeJob == null ? null : scrapeJob.getUrl();
+    return URI.create(url == null || url.isBlank() ? defaultUrl : url.trim());
+  }
+
+  /**
+   * a link found on one of the site's pages, made absolute against the page the listing starts at
+   */
+  protected String resolve(URI start, String link) {
+    try {
+      return start.resolve(link).toString();
+    } catch (IllegalArgumentException e) {
+      // not a link URI can parse, glue it on like a browser would
+      return start.getScheme() + "://" + start.getRawAuthority() + link;
+    }
+  }
+
   /**
    * make the job description not as difficult to read
    */
@@ -52,18 +90,43 @@ public abstract class Scraper {
    * Some scrapers won't do anything for this.
    */
   public List<JobPosting> removeJobPostingsBasedOnHref(List<JobPosting> jobPostings, DatabaseService dbService) {
-    List<String> existingHrefs = dbService.getHrefsForSite(getJobSite().name());
+    Set<String> existingHrefs = dbService.findKnownHrefs(getJobSite().name(),
+      jobPostings.stream().map(JobPosting::getHref).collect(Collectors.toList()));
     return jobPostings.stream()
-      .filter(jobPosting -> !existingHrefs.contains(jobPosting.getHref()))
+      .filter(jobPosting -> isNew(jobPosting.getHref(), existingHrefs))
       .collect(Collectors.toList());
   }
 
+  private boolean isNew(String href, Set<String> existingHrefs) {
+    if (href == null)
+      return true;
+    synchronized (seenHrefs) {
+      return !existingHrefs.contains(href) && seenHrefs.add(href);
+    }
+  }
+
+  /**
+   * the job this scraper runs for, may be null
+   */
+  public ScrapeJob getScrapeJob() {
+    return scrapeJob;
+  }
+
   public String getName() {
     if (scrapeJob == null)
       return "";
     return this.scrapeJob.getName();
   }
 
+  /**
+   * how hard we are allowed to hit the site
+   */
+  public Politeness getPoliteness() {
+    if (scrapeJob == null)
+      return getJobSite().getPoliteness();
+    return scrapeJob.getPoliteness();
+  }
+
   public boolean moreResults(){
     return true;
   }
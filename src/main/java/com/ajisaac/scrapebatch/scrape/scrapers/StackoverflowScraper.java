@@ -11,12 +11,14 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.nodes.Node;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class StackoverflowScraper extends Scraper {
+public class StackoverflowScraper extends Scraper implements PagedScraper {
 
   private int start = 1;
 
@@ -90,8 +92,15 @@ public class StackoverflowScraper extends Scraper {
 
   @Override
   public void parseJobDescriptionPage(String jobDescriptionPage, JobPosting jobPosting) {
+    parseJobDescriptionPage(Jsoup.parse(jobDescriptionPage), jobPosting);
+  }
+
+  @Override
+  public void parseJobDescriptionPage(InputStream page, String href, JobPosting jobPosting) throws IOException {
+    parseJobDescriptionPage(Jsoup.parse(page, null, href), jobPosting);
+  }
 
-    Document document = Jsoup.parse(jobDescriptionPage);
+  private void parseJobDescriptionPage(Document document, JobPosting jobPosting) {
     Element jsonData = document.selectFirst("script[type=\"application/ld+json\"]");
     if (jsonData == null) {
       // we still have the URL at least
@@ -161,12 +170,17 @@ public class StackoverflowScraper extends Scraper {
 
 
   public URI getNextMainPageURI() {
+    return getMainPageURI(start - 1);
+  }
+
+  @Override
+  public URI getMainPageURI(int index) {
+    URI first = startUri("https://stackoverflow.com/jobs?sort=p&r=true");
+    if (index == 0)
+      return first;
     try {
-      String url = "https://stackoverflow.com/jobs?sort=p&r=true";
-      if (start > 1) {
-        url = "https://stackoverflow.com/jobs?sort=p&r=true&pg=" + start;
-      }
-      return new URI(url);
+      String url = first.toString();
+      return new URI(url + (first.getRawQuery() == null ? "?" : "&") + "pg=" + (index + 1));
     } catch (URISyntaxException e) {
       return null;
     }
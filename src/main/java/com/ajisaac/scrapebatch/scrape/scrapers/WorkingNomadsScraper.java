@@ -108,7 +108,7 @@ public class WorkingNomadsScraper extends Scraper {
   }
 
   public URI getNextMainPageURI() {
-    return URI.create("https://www.workingnomads.co/api/exposed_jobs");
+    return startUri("https://www.workingnomads.co/api/exposed_jobs");
   }
 
 
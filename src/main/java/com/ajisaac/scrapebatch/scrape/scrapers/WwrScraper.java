@@ -10,6 +10,8 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
@@ -57,7 +59,7 @@ public class WwrScraper extends Scraper {
         if (key.equals("href")) {
           String value = att.getValue();
           if (value.trim().startsWith("/remote-jobs") || value.trim().startsWith("/listings")) {
-            jobPosting.setHref("https://weworkremotely.com" + value);
+            jobPosting.setHref(resolve(getNextMainPageURI(), value));
           }
         }
       }
@@ -97,8 +99,16 @@ public class WwrScraper extends Scraper {
       return;
     }
 
+    parseJobDescriptionPage(Jsoup.parse(jobDescriptionPage), jobPosting);
+  }
+
+  @Override
+  public void parseJobDescriptionPage(InputStream page, String href, JobPosting jobPosting) throws IOException {
+    parseJobDescriptionPage(Jsoup.parse(page, null, href), jobPosting);
+  }
+
+  private void parseJobDescriptionPage(Document document, JobPosting jobPosting) {
     // get main content
-    Document document = Jsoup.parse(jobDescriptionPage);
     Elements contents = document.getElementsByClass("content");
     Element content = contents.first();
     if (content == null) {
@@ -4,6 +4,7 @@ import com.ajisaac.scrapebatch.dto.DatabaseService;
 import com.ajisaac.scrapebatch.dto.JobPosting;
 import com.ajisaac.scrapebatch.dto.ScrapeJob;
 import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
+import com.ajisaac.scrapebatch.scrape.scrapers.PagedScraper;
 import com.ajisaac.scrapebatch.scrape.scrapers.Scraper;
 import com.google.common.base.Strings;
 import org.apache.http.client.utils.URIBuilder;
@@ -17,10 +18,11 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class IndeedScraper extends Scraper {
+public class IndeedScraper extends Scraper implements PagedScraper {
 
   // Used for keeping track of "next page". We scrape 10 results per page generally.
   private int start = 0;
+  private static final int RESULTS_PER_PAGE = 10;
 
   public IndeedScraper(ScrapeJob scrapeJob) {
     super(scrapeJob);
@@ -59,7 +61,7 @@ public class IndeedScraper extends Scraper {
 
     // do we need to keep scraping
     if (hasMoreResults(document))
-      this.start += 10;
+      this.start += RESULTS_PER_PAGE;
 
 
     return jobPostings;
@@ -116,6 +118,11 @@ public class IndeedScraper extends Scraper {
   }
 
   public URI getNextMainPageURI() {
+    return getMainPageURI(start / RESULTS_PER_PAGE);
+  }
+
+  @Override
+  public URI getMainPageURI(int index) {
     URIBuilder uriBuilder = new URIBuilder();
     try {
       // default values
@@ -138,8 +145,8 @@ public class IndeedScraper extends Scraper {
         uriBuilder.addParameter("remotejob", "1");
       }
 
-      if (start > 0) {
-        uriBuilder.addParameter("start", String.valueOf(this.start));
+      if (index > 0) {
+        uriBuilder.addParameter("start", String.valueOf(index * RESULTS_PER_PAGE));
       }
 
       return uriBuilder.build();
@@ -3,6 +3,7 @@ package com.ajisaac.scrapebatch.scrape.scrapers.unused;
 import com.ajisaac.scrapebatch.dto.JobPosting;
 import com.ajisaac.scrapebatch.dto.ScrapeJob;
 import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
+import com.ajisaac.scrapebatch.scrape.scrapers.PagedScraper;
 import com.ajisaac.scrapebatch.scrape.scrapers.Scraper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -18,7 +19,7 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 
-public class SitepointScraper extends Scraper {
+public class SitepointScraper extends Scraper implements PagedScraper {
   private int start = 1;
 
   public SitepointScraper(ScrapeJob scrapeJob) {
@@ -126,10 +127,15 @@ public class SitepointScraper extends Scraper {
   }
 
   public URI getNextMainPageURI() {
+    return getMainPageURI(start - 1);
+  }
+
+  @Override
+  public URI getMainPageURI(int index) {
     try {
       String url = "https://www.sitepoint.com/jobs/";
-      if (start > 1) {
-        url = "https://www.sitepoint.com/jobs/" + start + "/";
+      if (index > 0) {
+        url = "https://www.sitepoint.com/jobs/" + (index + 1) + "/";
       }
       return new URI(url);
     } catch (URISyntaxException e) {
@@ -0,0 +1,83 @@
+package com.ajisaac.scrapebatch.service;
+
+import com.ajisaac.scrapebatch.dto.DatabaseService;
+import com.ajisaac.scrapebatch.dto.JobPosting;
+import com.ajisaac.scrapebatch.network.PageGrabber;
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.executors.ScrapingExecutor;
+import org.eclipse.microprofile.context.ManagedExecutor;
+
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Re-runs description parsing for postings we already have, using the archived pages. Lets a
+ * scraper pick up new fields without hitting the job site again.
+ */
+@Singleton
+public class BackfillService {
+
+  private final DatabaseService db;
+  private final WebsocketNotifier notifier;
+
+  private final ManagedExecutor executorService = ManagedExecutor.builder().build();
+
+  public BackfillService(DatabaseService db, WebsocketNotifier notifier) {
+    this.db = db;
+    this.notifier = notifier;
+  }
+
+  public String backfill(long id) {
+    var scrapeJob = db.getScrapeJobById(id);
+    if (scrapeJob == null)
+      return "Job Not Found";
+
+    var type = scrapeJob.getTypeFromScrapeJob();
+    if (type == null)
+      return "Job Site Not Found";
+
+    // description parsing doesn't touch the scraper's paging state, so one executor can be shared
+    ScrapingExecutor executor = scrapeJob.getExecutor();
+    if (executor == null)
+      return "Executor Not Available";
+
+    executorService.submit(() -> {
+      var name = scrapeJob.getName();
+      List<JobPosting> postings = db.getJobPostingsForSite(type.name());
+      notifier.send("Backfilling " + postings.size() + " postings from the page archive.", name);
+
+      List<JobPosting> updated;
+      var pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+      try {
+        // parsing is cpu bound, fan it out over every core
+        updated = pool.submit(() -> postings.parallelStream()
+          .filter(posting -> reparse(executor, posting))
+          .collect(Collectors.toList())).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        notifier.error(e, name);
+        return;
+      } catch (ExecutionException e) {
+        notifier.error(e, name);
+        return;
+      } finally {
+        pool.shutdown();
+      }
+
+      db.updateJobPostings(updated);
+      notifier.send("Backfilled " + updated.size() + " of " + postings.size() + " postings.", name);
+    });
+    return null;
+  }
+
+  private boolean reparse(ScrapingExecutor executor, JobPosting posting) {
+    String page = PageGrabber.replayPage(posting.getHref());
+    if (page == null)
+      return false;
+    executor.parseDescription(posting, page);
+    return true;
+  }
+}
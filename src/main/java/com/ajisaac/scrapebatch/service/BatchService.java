@@ -2,13 +2,24 @@ package com.ajisaac.scrapebatch.service;
 
 import com.ajisaac.scrapebatch.dto.DatabaseService;
 import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.dto.ScrapeRun;
+import com.ajisaac.scrapebatch.dto.SiteThroughput;
+import com.ajisaac.scrapebatch.network.ScrapeThreads;
 import com.ajisaac.scrapebatch.network.WebsocketNotifier;
 import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
+import com.ajisaac.scrapebatch.scrape.executors.PipelineScrapingExecutor;
 import com.ajisaac.scrapebatch.scrape.executors.ScrapingExecutor;
+import com.ajisaac.scrapebatch.scrape.executors.StageStats;
+import org.eclipse.microprofile.config.ConfigProvider;
 import org.eclipse.microprofile.context.ManagedExecutor;
+import org.eclipse.microprofile.context.ThreadContext;
 
 import javax.inject.Singleton;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.function.IntConsumer;
 
 @Singleton
 public class BatchService {
@@ -16,75 +27,200 @@ public class BatchService {
   private final DatabaseService db;
   private final WebsocketNotifier notifier;
 
-  private final Map<ScrapingExecutorType, ScrapingExecutor> jobsInProgress =
+  // by scrape job id. Runs against the same site share its host's rate and connection budget in
+  // the fetch engine, so they only slow each other down, they never go over it
+  private final Map<Long, ScrapingExecutor> jobsInProgress =
     Collections.synchronizedMap(new HashMap<>());
+  private final Map<ScrapingExecutorType, Integer> runningPerSite = new EnumMap<>(ScrapingExecutorType.class);
+
+  private final int maxRunningPerSite = Math.max(1,
+    ConfigProvider.getConfig().getOptionalValue("scrape.site.max-running-jobs", Integer.class).orElse(2));
 
   private final ManagedExecutor executorService = ManagedExecutor.builder().build();
 
+  // with scrape.threads.virtual each run gets a virtual thread instead of a managed executor
+  // thread, the thread context carries over what the managed executor would have propagated
+  private final ExecutorService virtualThreads =
+    ScrapeThreads.isVirtual() ? ScrapeThreads.newExecutor("scrape-run", 1) : null;
+  private final ThreadContext threadContext = ThreadContext.builder().build();
+
   public BatchService(DatabaseService db, WebsocketNotifier notifier) {
     this.db = db;
     this.notifier = notifier;
   }
 
   public boolean isCurrentlyScraping(long idNum) {
-    var scrapeJob = db.getScrapeJobById(idNum);
-    if (scrapeJob == null)
-      return false;
+    return this.jobsInProgress.get(idNum) != null;
+  }
 
-    var type = scrapeJob.getTypeFromScrapeJob();
+  /**
+   * true if the site already has as many runs going as it is allowed
+   */
+  public boolean isSiteBusy(ScrapingExecutorType site) {
+    synchronized (jobsInProgress) {
+      return site != null && runningPerSite.getOrDefault(site, 0) >= maxRunningPerSite;
+    }
+  }
 
-    return this.jobsInProgress.get(type) != null;
+  /**
+   * stage numbers of every pipelined scrape that is running right now, by scrape job id
+   */
+  public Map<Long, List<StageStats>> getPipelineStats() {
+    Map<Long, List<StageStats>> stats = new TreeMap<>();
+    synchronized (jobsInProgress) {
+      jobsInProgress.forEach((id, executor) -> {
+        if (executor instanceof PipelineScrapingExecutor)
+          stats.put(id, ((PipelineScrapingExecutor) executor).getStageStats());
+      });
+    }
+    return stats;
   }
 
   public String stopScraping(long id) {
-    var scrapeJob = db.getScrapeJobById(id);
-    if (scrapeJob == null)
-      return "Job Not Found";
+    var executor = jobsInProgress.get(id);
+    if (executor == null)
+      return db.getScrapeJobById(id) == null ? "Job Not Found" : "Scrape job wasn't in progress";
 
-    var type = scrapeJob.getTypeFromScrapeJob();
-    if (type == null)
-      return "Job Site Not Found";
+    // the run leaves jobsInProgress, and gives back its site slot, once it has wound down
+    executor.stopScraping();
+    return "Stopped scraping";
+  }
 
-    if (this.jobsInProgress.containsKey(type)) {
-      jobsInProgress.get(type).stopScraping();
-      jobsInProgress.remove(type);
-      return "Stopped scraping";
-    }
-    return "Scrape job wasn't in progress";
+  public String doScrape(long id) {
+    return doScrape(id, true);
+  }
 
+  /**
+   * @param resume pick up from the checkpoint of an earlier run that didn't finish, if there is one
+   */
+  public String doScrape(long id, boolean resume) {
+    return doScrape(id, false, resume);
   }
 
-  public String doScrape(long id) {
+  /**
+   * runs the scrape job against the local page archive instead of the live site
+   */
+  public String doReplay(long id) {
+    return doScrape(id, true, false);
+  }
+
+  private String doScrape(long id, boolean replay, boolean resume) {
 
     var scrapeJob = db.getScrapeJobById(id);
     if (scrapeJob == null)
       return "Job Not Found";
 
+    return doScrape(scrapeJob, replay, resume, newPostings -> {
+    });
+  }
+
+  public String doScrape(ScrapeJob scrapeJob, boolean replay, IntConsumer whenDone) {
+    return doScrape(scrapeJob, replay, !replay, whenDone);
+  }
+
+  /**
+   * start scraping the job
+   *
+   * @param resume   pick up from the job's checkpoint, if it has a recent one
+   * @param whenDone gets how many non duplicate postings the scrape found once it is over, however
+   *                 it ended. Not called if it never started.
+   * @return null if the scrape started, otherwise why it didn't
+   */
+  public String doScrape(ScrapeJob scrapeJob, boolean replay, boolean resume, IntConsumer whenDone) {
     var executorType = scrapeJob.getTypeFromScrapeJob();
     if (executorType == null)
       return "Job Site Not Found";
 
-    if (this.jobsInProgress.containsKey(executorType))
-      return "Already Scraping this Site";
-
     var executor = scrapeJob.getExecutor();
     if (executor == null)
       return "Executor Not Available";
 
     executor.setDb(db);
     executor.setWebsocketNotifier(notifier);
+    executor.setReplay(replay);
+    executor.setResume(resume);
+    if (scrapeJob.getConcurrency() != null && scrapeJob.getConcurrency() > 0)
+      executor.setMaxInFlight(scrapeJob.getConcurrency());
+
+    String err = claim(scrapeJob.getId(), executorType, executor);
+    if (err != null)
+      return err;
+
+    submit(() -> {
+      long startedAt = System.currentTimeMillis();
+      boolean failed = true;
+      try {
+        executor.scrape();
+        failed = false;
+      } finally {
+        release(scrapeJob.getId(), executorType);
+        recordRun(scrapeJob, executor, replay, failed, startedAt);
+        whenDone.accept(executor.getNewPostings());
+      }
+    });
 
-    jobsInProgress.put(executorType, executor);
 
+    return null;
+  }
 
-    // todo add a hook into the thread that lets us stop its execution
-    executorService.submit(() -> {
-      executor.scrape();
-      jobsInProgress.remove(executorType);
-    });
+  /**
+   * register the run, unless the job is already running or its site is at its limit
+   */
+  private String claim(Long id, ScrapingExecutorType site, ScrapingExecutor executor) {
+    synchronized (jobsInProgress) {
+      if (jobsInProgress.containsKey(id))
+        return "Already Scraping this Job";
+      if (isSiteBusy(site))
+        return "Already Scraping this Site " + maxRunningPerSite + " times";
+      jobsInProgress.put(id, executor);
+      runningPerSite.merge(site, 1, Integer::sum);
+      return null;
+    }
+  }
 
+  private void release(Long id, ScrapingExecutorType site) {
+    synchronized (jobsInProgress) {
+      jobsInProgress.remove(id);
+      runningPerSite.merge(site, -1, Integer::sum);
+    }
+  }
 
-    return null;
+  private void recordRun(ScrapeJob scrapeJob, ScrapingExecutor executor, boolean replay, boolean failed,
+                         long startedAt) {
+    var stats = executor.getRunStats();
+    String outcome = failed ? "failed" : stats.isStopped() ? "stopped" : "finished";
+    try {
+      db.storeScrapeRun(ScrapeRun.of(scrapeJob, stats, replay, outcome, startedAt, System.currentTimeMillis()));
+    } catch (RuntimeException e) {
+      // losing the record of a run is no reason to lose the run
+      notifier.error(e, scrapeJob.getName());
+    }
+  }
+
+  /**
+   * the most recent scrape runs, newest first
+   */
+  public List<ScrapeRun> getScrapeRuns(int limit) {
+    return db.getLatestScrapeRuns(Math.max(1, Math.min(limit, 1000)));
+  }
+
+  /**
+   * throughput of each site's live runs over the last given days
+   */
+  public List<SiteThroughput> getSiteThroughput(int days) {
+    long since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Math.max(1, days));
+    Map<String, List<ScrapeRun>> bySite = db.getLiveScrapeRunsSince(since).stream()
+      .collect(Collectors.groupingBy(run -> String.valueOf(run.getSite()), TreeMap::new, Collectors.toList()));
+    List<SiteThroughput> throughput = new ArrayList<>();
+    bySite.forEach((site, runs) -> throughput.add(SiteThroughput.of(site, runs)));
+    return throughput;
+  }
+
+  private void submit(Runnable run) {
+    if (virtualThreads != null)
+      virtualThreads.submit(threadContext.contextualRunnable(run));
+    else
+      executorService.submit(run);
   }
 
 
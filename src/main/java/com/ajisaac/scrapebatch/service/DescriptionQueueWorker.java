@@ -0,0 +1,206 @@
+package com.ajisaac.scrapebatch.service;
+
+import com.ajisaac.scrapebatch.dto.DatabaseService;
+import com.ajisaac.scrapebatch.dto.DescriptionQueueStats;
+import com.ajisaac.scrapebatch.dto.DescriptionTask;
+import com.ajisaac.scrapebatch.dto.JobPosting;
+import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.network.CancellationToken;
+import com.ajisaac.scrapebatch.network.PageGrabber;
+import com.ajisaac.scrapebatch.network.ScrapeThreads;
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.executors.ScrapingExecutor;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.enterprise.event.Observes;
+import javax.inject.Singleton;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works through the description tasks that multi page scrapes queue up when scrape.queue.enabled
+ * is set. Every instance runs one of these against the same table, claiming a batch at a time, so
+ * adding instances adds description page throughput. Pages are fetched under the scrape job's
+ * politeness budget, which is only per instance; keep that in mind when adding a lot of them.
+ */
+@Singleton
+public class DescriptionQueueWorker {
+
+  private static final String NAME = "description-queue";
+
+  private final DatabaseService db;
+  private final WebsocketNotifier notifier;
+
+  private final boolean enabled;
+  private final int batchSize;
+  private final long leaseMillis;
+  private final int maxAttempts;
+  private final long retryDelayMillis;
+  private final long pollMillis;
+  // tells our leases apart from every other instance's
+  private final String owner;
+
+  private final CancellationToken cancellation = new CancellationToken();
+  // parsers by scrape job id, only touched on the worker thread
+  private final Map<Long, Parser> parsers = new HashMap<>();
+  private volatile boolean running = false;
+
+  public DescriptionQueueWorker(DatabaseService db, WebsocketNotifier notifier) {
+    this.db = db;
+    this.notifier = notifier;
+
+    Config config = ConfigProvider.getConfig();
+    this.enabled = config.getOptionalValue("scrape.queue.enabled", Boolean.class).orElse(false);
+    this.batchSize = Math.max(1, config.getOptionalValue("scrape.queue.batch-size", Integer.class).orElse(8));
+    this.leaseMillis = TimeUnit.SECONDS.toMillis(
+      Math.max(1, config.getOptionalValue("scrape.queue.lease-seconds", Long.class).orElse(120L)));
+    this.maxAttempts = Math.max(1, config.getOptionalValue("scrape.queue.max-attempts", Integer.class).orElse(3));
+    this.retryDelayMillis = TimeUnit.SECONDS.toMillis(
+      config.getOptionalValue("scrape.queue.retry-delay-seconds", Long.class).orElse(30L));
+    this.pollMillis = Math.max(10, config.getOptionalValue("scrape.queue.poll-millis", Long.class).orElse(1000L));
+    this.owner = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+  }
+
+  void onStart(@Observes StartupEvent event) {
+    if (!enabled)
+      return;
+    running = true;
+    ScrapeThreads.start(NAME, this::work);
+  }
+
+  void onStop(@Observes ShutdownEvent event) {
+    // whatever we hold comes free again once its lease runs out
+    running = false;
+    cancellation.cancel();
+  }
+
+  public DescriptionQueueStats getStats() {
+    return db.getDescriptionQueueStats(maxAttempts);
+  }
+
+  private void work() {
+    while (running) {
+      int done;
+      try {
+        done = poll();
+      } catch (RuntimeException e) {
+        // the database may be down for a moment, never let that kill the worker
+        notifier.error(e, NAME);
+        done = 0;
+      }
+      if (done > 0)
+        continue;
+      // the queue is drained, pick up any edits to the scrape jobs next time round
+      parsers.clear();
+      try {
+        Thread.sleep(pollMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * claim a batch, fetch its pages all at once and store the postings as they get parsed
+   *
+   * @return how many tasks were claimed
+   */
+  @ActivateRequestContext
+  int poll() {
+    List<DescriptionTask> tasks = db.claimDescriptionTasks(owner, batchSize, leaseMillis, maxAttempts);
+    if (tasks.isEmpty())
+      return 0;
+
+    List<CompletableFuture<String>> pages = new ArrayList<>();
+    for (DescriptionTask task : tasks) {
+      Parser parser = parserFor(task.getScrapeJobId());
+      pages.add(parser == null
+        ? CompletableFuture.completedFuture(null)
+        : PageGrabber.grabPageAsync(task.getHref(), parser.scrapeJob.getPoliteness(), cancellation));
+    }
+
+    int stored = 0;
+    for (int i = 0; i < tasks.size(); i++) {
+      DescriptionTask task = tasks.get(i);
+      String err = process(task, pages.get(i).join());
+      if (err == null) {
+        stored++;
+        continue;
+      }
+      // a shutdown is not the task's fault, its lease just runs out
+      if (!cancellation.isCancelled())
+        db.failDescriptionTask(task.getId(), owner, retryDelayMillis * task.getAttempts(), err);
+    }
+    if (stored > 0)
+      notifier.send("Stored " + stored + " of " + tasks.size() + " queued description pages.", NAME);
+    return tasks.size();
+  }
+
+  /**
+   * @return null if the posting was stored, or handled elsewhere, otherwise what went wrong
+   */
+  private String process(DescriptionTask task, String page) {
+    Parser parser = parserFor(task.getScrapeJobId());
+    if (parser == null)
+      return "Job Not Found";
+    if (page == null)
+      return "Couldn't get the description page";
+    JobPosting jobPosting = task.readPosting();
+    if (jobPosting == null)
+      return "Couldn't read the queued posting";
+
+    try {
+      parser.executor.parseDescription(jobPosting, page);
+    } catch (RuntimeException e) {
+      return "Couldn't parse the description page: " + e.getMessage();
+    }
+    if (db.completeDescriptionTask(task.getId(), owner, jobPosting))
+      notifier.successfulDescPageScrape(jobPosting, NAME);
+    return null;
+  }
+
+  private Parser parserFor(long scrapeJobId) {
+    Parser parser = parsers.get(scrapeJobId);
+    if (parser != null)
+      return parser;
+    ScrapeJob scrapeJob = db.getScrapeJobById(scrapeJobId);
+    ScrapingExecutor executor = scrapeJob == null ? null : scrapeJob.getExecutor();
+    if (executor == null)
+      return null;
+    parser = new Parser(scrapeJob, executor);
+    parsers.put(scrapeJobId, parser);
+    return parser;
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "instance";
+    }
+  }
+
+  /**
+   * the scrape job a task came from, and an executor for its site to parse the page with
+   */
+  private static class Parser {
+    private final ScrapeJob scrapeJob;
+    private final ScrapingExecutor executor;
+
+    Parser(ScrapeJob scrapeJob, ScrapingExecutor executor) {
+      this.scrapeJob = scrapeJob;
+      this.executor = executor;
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package com.ajisaac.scrapebatch.service;
+
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import io.agroal.api.AgroalDataSource;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import javax.enterprise.event.Observes;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks one instance to plan scrapes, so a periodic or scrape all trigger doesn't go off on every
+ * replica at once. The leader is whoever holds a Postgres session level advisory lock. It keeps
+ * the connection that took the lock open and checks it on every heartbeat; if the instance dies
+ * its session goes with it, Postgres drops the lock, and the next follower to try takes over
+ * within a heartbeat. Every instance still executes scrapes and queued description pages.
+ *
+ * Off unless scrape.leader.enabled is set, until then every instance counts as the leader.
+ */
+@Singleton
+public class LeaderElection {
+
+  private static final String NAME = "leader";
+
+  private final AgroalDataSource dataSource;
+  private final WebsocketNotifier notifier;
+
+  private final boolean enabled;
+  private final long heartbeatSeconds;
+  private final long lockKey;
+
+  private ScheduledExecutorService timer;
+  // the session holding the lock while we lead, only touched on the timer thread
+  private Connection connection;
+  private volatile boolean leader = false;
+
+  public LeaderElection(AgroalDataSource dataSource, WebsocketNotifier notifier) {
+    this.dataSource = dataSource;
+    this.notifier = notifier;
+
+    Config config = ConfigProvider.getConfig();
+    this.enabled = config.getOptionalValue("scrape.leader.enabled", Boolean.class).orElse(false);
+    this.heartbeatSeconds = Math.max(1, config.getOptionalValue("scrape.leader.heartbeat-seconds", Long.class).orElse(5L));
+    this.lockKey = config.getOptionalValue("scrape.leader.lock-key", Long.class).orElse(7_410_210_226L);
+  }
+
+  void onStart(@Observes StartupEvent event) {
+    if (!enabled) {
+      leader = true;
+      return;
+    }
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "leader-election");
+      t.setDaemon(true);
+      return t;
+    });
+    timer.scheduleWithFixedDelay(this::heartbeat, 0, heartbeatSeconds, TimeUnit.SECONDS);
+  }
+
+  void onStop(@Observes ShutdownEvent event) {
+    if (timer == null)
+      return;
+    timer.shutdownNow();
+    try {
+      timer.awaitTermination(heartbeatSeconds, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // letting go of the lock hands it straight to a follower instead of waiting for a timeout
+    stepDown();
+  }
+
+  /**
+   * true if this instance should plan scrapes right now
+   */
+  public boolean isLeader() {
+    return leader;
+  }
+
+  private void heartbeat() {
+    try {
+      if (connection != null) {
+        if (connection.isValid((int) heartbeatSeconds))
+          return;
+        notifier.send("Lost the leader lock, this instance stops planning scrapes.", NAME);
+        stepDown();
+      }
+      tryToLead();
+    } catch (SQLException | RuntimeException e) {
+      // the database is unreachable, whoever can still reach it leads
+      if (leader)
+        notifier.error(e, NAME);
+      stepDown();
+    }
+  }
+
+  private void tryToLead() throws SQLException {
+    Connection candidate = dataSource.getConnection();
+    boolean locked = false;
+    try {
+      candidate.setAutoCommit(true);
+      try (var statement = candidate.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+        statement.setLong(1, lockKey);
+        try (var result = statement.executeQuery()) {
+          locked = result.next() && result.getBoolean(1);
+        }
+      }
+    } finally {
+      if (!locked)
+        candidate.close();
+    }
+    if (!locked)
+      return;
+
+    connection = candidate;
+    leader = true;
+    notifier.send("This instance is now the leader and plans scrapes.", NAME);
+  }
+
+  private void stepDown() {
+    leader = false;
+    if (connection == null)
+      return;
+    // the connection goes back to the pool, so the lock has to be let go of explicitly
+    try (var statement = connection.createStatement()) {
+      statement.execute("SELECT pg_advisory_unlock_all()");
+    } catch (SQLException e) {
+      // the session is broken, and its lock gone with it
+    }
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      // nothing more to do with it
+    }
+    connection = null;
+  }
+}
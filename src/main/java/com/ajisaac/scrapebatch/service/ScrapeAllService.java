@@ -0,0 +1,155 @@
+package com.ajisaac.scrapebatch.service;
+
+import com.ajisaac.scrapebatch.dto.ScrapeAllProgress;
+import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import javax.inject.Singleton;
+import java.util.*;
+
+/**
+ * Runs every scrape job in one go. Jobs are queued by priority, highest first, and started as
+ * soon as there is room under the global cap and their site's cap. Each site has its own
+ * politeness budget, so running different sites side by side is what makes a full refresh fast.
+ * Jobs on the same site can overlap too, but they split that site's budget, so the per site cap
+ * stays low. A job whose site is busy is passed over for the next one instead of holding up the
+ * queue.
+ */
+@Singleton
+public class ScrapeAllService {
+
+  private static final String NAME = "scrape-all";
+
+  private final BatchService batchService;
+  private final LeaderElection leaderElection;
+  private final WebsocketNotifier notifier;
+
+  private final int maxConcurrent =
+    ConfigProvider.getConfig().getOptionalValue("scrape.all.max-concurrent", Integer.class).orElse(4);
+  private final int maxPerSite =
+    ConfigProvider.getConfig().getOptionalValue("scrape.all.max-per-site", Integer.class).orElse(2);
+
+  // everything below is guarded by this
+  private final List<ScrapeJob> queue = new ArrayList<>();
+  private final Map<Long, ScrapeJob> running = new LinkedHashMap<>();
+  private final Map<ScrapingExecutorType, Integer> runningPerSite = new EnumMap<>(ScrapingExecutorType.class);
+  private int total = 0;
+  private int finished = 0;
+  private int skipped = 0;
+  private long startedAt = 0;
+  private long endedAt = 0;
+
+  public ScrapeAllService(BatchService batchService, LeaderElection leaderElection, WebsocketNotifier notifier) {
+    this.batchService = batchService;
+    this.leaderElection = leaderElection;
+    this.notifier = notifier;
+  }
+
+  /**
+   * queue every scrape job and start as many as the caps allow
+   *
+   * @return null if the run started, otherwise why it didn't
+   */
+  public synchronized String scrapeAll() {
+    if (!leaderElection.isLeader())
+      return "Only the leader instance scrapes everything";
+    if (isRunning())
+      return "Already scraping everything";
+
+    List<ScrapeJob> jobs = new ArrayList<>(batchService.getAllScrapeJobs());
+    if (jobs.isEmpty())
+      return "No Scrape Jobs";
+
+    jobs.sort(Comparator.comparing(ScrapeAllService::priorityOf).reversed().thenComparing(ScrapeJob::getId));
+    queue.clear();
+    queue.addAll(jobs);
+    total = jobs.size();
+    finished = 0;
+    skipped = 0;
+    startedAt = System.currentTimeMillis();
+    endedAt = 0;
+
+    notifier.send("Scraping all " + total + " jobs, " + maxConcurrent + " at a time.", NAME);
+    dispatch();
+    return null;
+  }
+
+  /**
+   * drop whatever is still queued and stop the jobs that are running
+   */
+  public String stopAll() {
+    List<Long> toStop;
+    synchronized (this) {
+      if (!isRunning())
+        return "Scrape all wasn't in progress";
+      skipped += queue.size();
+      queue.clear();
+      toStop = new ArrayList<>(running.keySet());
+    }
+    // the stopped jobs report back through jobDone, which needs the lock
+    toStop.forEach(batchService::stopScraping);
+    return "Stopped scraping all";
+  }
+
+  public synchronized ScrapeAllProgress getProgress() {
+    var progress = new ScrapeAllProgress();
+    progress.setRunning(isRunning());
+    progress.setTotal(total);
+    progress.setQueued(queue.size());
+    progress.setFinished(finished);
+    progress.setSkipped(skipped);
+    List<String> names = new ArrayList<>();
+    running.values().forEach(job -> names.add(job.getName()));
+    progress.setInProgress(names);
+    long end = endedAt == 0 ? System.currentTimeMillis() : endedAt;
+    progress.setElapsedSeconds(startedAt == 0 ? 0 : (end - startedAt) / 1000);
+    return progress;
+  }
+
+  private boolean isRunning() {
+    return !queue.isEmpty() || !running.isEmpty();
+  }
+
+  /**
+   * start queued jobs, in priority order, while there is room for them
+   */
+  private void dispatch() {
+    Iterator<ScrapeJob> it = queue.iterator();
+    while (it.hasNext() && running.size() < maxConcurrent) {
+      ScrapeJob job = it.next();
+      ScrapingExecutorType site = job.getTypeFromScrapeJob();
+      if (site != null && runningPerSite.getOrDefault(site, 0) >= maxPerSite)
+        continue;
+      it.remove();
+
+      String err = site == null ? "Job Site Not Found" : batchService.doScrape(job, false, newPostings -> jobDone(job, site));
+      if (err != null) {
+        skipped++;
+        notifier.send("Skipping " + job.getName() + ": " + err, NAME);
+        continue;
+      }
+      running.put(job.getId(), job);
+      runningPerSite.merge(site, 1, Integer::sum);
+    }
+
+    if (!isRunning() && endedAt == 0 && startedAt != 0) {
+      endedAt = System.currentTimeMillis();
+      notifier.send("Finished scraping all: " + finished + " done, " + skipped + " skipped in "
+        + (endedAt - startedAt) / 1000 + " seconds.", NAME);
+    }
+  }
+
+  private synchronized void jobDone(ScrapeJob job, ScrapingExecutorType site) {
+    running.remove(job.getId());
+    runningPerSite.merge(site, -1, Integer::sum);
+    finished++;
+    notifier.send("Scrape all: " + (finished + skipped) + " of " + total + " jobs done.", NAME);
+    dispatch();
+  }
+
+  private static int priorityOf(ScrapeJob job) {
+    return job.getPriority() == null ? 0 : job.getPriority();
+  }
+}
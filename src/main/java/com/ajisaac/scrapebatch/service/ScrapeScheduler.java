@@ -0,0 +1,175 @@
+package com.ajisaac.scrapebatch.service;
+
+import com.ajisaac.scrapebatch.dto.ScheduledScrape;
+import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.config.Config;
+import org.eclipse.microprofile.config.ConfigProvider;
+
+import javax.enterprise.context.control.ActivateRequestContext;
+import javax.enterprise.event.Observes;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-runs every scrape job on an interval of its own. After each run the interval moves with how
+ * many new postings the run found: a board that keeps turning up new postings gets scraped more
+ * often, one that turns up nothing gets left alone for longer, within the configured bounds.
+ * Off unless scrape.schedule.enabled is set. With several instances only the leader plans runs.
+ */
+@Singleton
+public class ScrapeScheduler {
+
+  private static final String NAME = "scheduler";
+
+  private final BatchService batchService;
+  private final LeaderElection leaderElection;
+  private final WebsocketNotifier notifier;
+
+  private final boolean enabled;
+  private final long tickSeconds;
+  private final long initialMinutes;
+  private final long minMinutes;
+  private final long maxMinutes;
+  private final int targetNewPostings;
+
+  // by scrape job id, guarded by this
+  private final Map<Long, Slot> slots = new HashMap<>();
+  private ScheduledExecutorService timer;
+  // we have ticked as a follower, so another instance was planning the runs until now
+  private boolean followed = false;
+
+  public ScrapeScheduler(BatchService batchService, LeaderElection leaderElection, WebsocketNotifier notifier) {
+    this.batchService = batchService;
+    this.leaderElection = leaderElection;
+    this.notifier = notifier;
+
+    Config config = ConfigProvider.getConfig();
+    this.enabled = config.getOptionalValue("scrape.schedule.enabled", Boolean.class).orElse(false);
+    this.tickSeconds = Math.max(1, config.getOptionalValue("scrape.schedule.tick-seconds", Long.class).orElse(60L));
+    this.minMinutes = Math.max(1, config.getOptionalValue("scrape.schedule.min-minutes", Long.class).orElse(30L));
+    this.maxMinutes = Math.max(minMinutes, config.getOptionalValue("scrape.schedule.max-minutes", Long.class).orElse(1440L));
+    this.initialMinutes = clamp(config.getOptionalValue("scrape.schedule.initial-minutes", Long.class).orElse(120L));
+    this.targetNewPostings = Math.max(1, config.getOptionalValue("scrape.schedule.target-new-postings", Integer.class).orElse(10));
+  }
+
+  void onStart(@Observes StartupEvent event) {
+    if (!enabled)
+      return;
+    timer = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "scrape-scheduler");
+      t.setDaemon(true);
+      return t;
+    });
+    timer.scheduleWithFixedDelay(this::tick, tickSeconds, tickSeconds, TimeUnit.SECONDS);
+  }
+
+  void onStop(@Observes ShutdownEvent event) {
+    if (timer != null)
+      timer.shutdownNow();
+  }
+
+  /**
+   * start every job that is due. New jobs are due right away, jobs that were deleted drop out.
+   */
+  @ActivateRequestContext
+  void tick() {
+    try {
+      if (!leaderElection.isLeader()) {
+        synchronized (this) {
+          followed = true;
+        }
+        return;
+      }
+      List<ScrapeJob> jobs = batchService.getAllScrapeJobs();
+      long now = System.currentTimeMillis();
+      synchronized (this) {
+        // after a failover the old leader has likely just run everything, don't start it all again
+        long firstRun = followed ? now + TimeUnit.MINUTES.toMillis(minMinutes) : now;
+        Set<Long> ids = new HashSet<>();
+        for (ScrapeJob job : jobs) {
+          ids.add(job.getId());
+          Slot slot = slots.computeIfAbsent(job.getId(), id -> new Slot(initialMinutes, firstRun));
+          slot.name = job.getName();
+          if (slot.running || slot.nextRun > now)
+            continue;
+          start(job, slot, now);
+        }
+        slots.keySet().retainAll(ids);
+      }
+    } catch (RuntimeException e) {
+      // never let one bad tick kill the timer
+      notifier.error(e, NAME);
+    }
+  }
+
+  private void start(ScrapeJob job, Slot slot, long now) {
+    String err = batchService.doScrape(job, false, newPostings -> finished(job, newPostings));
+    if (err == null) {
+      slot.running = true;
+      return;
+    }
+    // a job started by hand, or a site already at its limit, is simply tried again next tick
+    if (!batchService.isCurrentlyScraping(job.getId()) && !batchService.isSiteBusy(job.getTypeFromScrapeJob()))
+      slot.nextRun = now + TimeUnit.MINUTES.toMillis(maxMinutes);
+  }
+
+  private synchronized void finished(ScrapeJob job, int newPostings) {
+    Slot slot = slots.get(job.getId());
+    if (slot == null)
+      return;
+    slot.running = false;
+    slot.lastNewPostings = newPostings;
+    slot.intervalMinutes = clamp(Math.round(slot.intervalMinutes * adjustment(newPostings)));
+    slot.nextRun = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(slot.intervalMinutes);
+    notifier.send(job.getName() + " found " + newPostings + " new postings, next scheduled run in "
+      + slot.intervalMinutes + " minutes.", NAME);
+  }
+
+  /**
+   * Scale the interval so a run finds about targetNewPostings. Finding twice the target halves the
+   * interval, finding nothing doubles it, and it never moves by more than that in one go.
+   */
+  private double adjustment(int newPostings) {
+    if (newPostings <= 0)
+      return 2;
+    return Math.min(2, Math.max(0.5, (double) targetNewPostings / newPostings));
+  }
+
+  private long clamp(long minutes) {
+    return Math.min(maxMinutes, Math.max(minMinutes, minutes));
+  }
+
+  public synchronized List<ScheduledScrape> getSchedule() {
+    List<ScheduledScrape> schedule = new ArrayList<>();
+    slots.forEach((id, slot) -> {
+      var scheduled = new ScheduledScrape();
+      scheduled.setScrapeJobId(id);
+      scheduled.setName(slot.name);
+      scheduled.setIntervalMinutes(slot.intervalMinutes);
+      scheduled.setNextRunEpochMillis(slot.nextRun);
+      scheduled.setLastNewPostings(slot.lastNewPostings);
+      schedule.add(scheduled);
+    });
+    schedule.sort(Comparator.comparingLong(ScheduledScrape::getNextRunEpochMillis));
+    return schedule;
+  }
+
+  private static class Slot {
+    private String name;
+    private long intervalMinutes;
+    private long nextRun;
+    private boolean running = false;
+    private Integer lastNewPostings;
+
+    Slot(long intervalMinutes, long nextRun) {
+      this.intervalMinutes = intervalMinutes;
+      this.nextRun = nextRun;
+    }
+  }
+}
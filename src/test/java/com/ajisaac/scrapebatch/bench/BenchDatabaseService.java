@@ -0,0 +1,94 @@
+package com.ajisaac.scrapebatch.bench;
+
+import com.ajisaac.scrapebatch.dto.DatabaseService;
+import com.ajisaac.scrapebatch.dto.JobPosting;
+import com.ajisaac.scrapebatch.dto.PageValidator;
+import com.ajisaac.scrapebatch.dto.ScrapeCheckpoint;
+
+import javax.enterprise.inject.Vetoed;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Stands in for the database during a benchmark. Postings are counted and their hrefs kept in
+ * memory, and no page is ever unchanged. Every run starts out empty, so it does the full amount
+ * of work, unless the hrefs are kept from the run before to time a run that is caught up.
+ */
+// the shutdown observer it inherits would make it a second DatabaseService bean otherwise
+@Vetoed
+class BenchDatabaseService extends DatabaseService {
+
+  private final Map<String, AtomicLong> storedBySite = new ConcurrentHashMap<>();
+  private final Map<String, Set<String>> hrefsBySite = new ConcurrentHashMap<>();
+
+  BenchDatabaseService() {
+    super(null, null, null, null, null, null, null, null);
+  }
+
+  @Override
+  public void storeJobPostingInDatabase(JobPosting jp) {
+    if (jp == null)
+      return;
+    storedBySite.computeIfAbsent(String.valueOf(jp.getJobSite()), s -> new AtomicLong()).incrementAndGet();
+    if (jp.getHref() != null)
+      hrefsBySite.computeIfAbsent(String.valueOf(jp.getJobSite()), s -> ConcurrentHashMap.newKeySet()).add(jp.getHref());
+  }
+
+  @Override
+  public List<String> getHrefsForSite(String site) {
+    return List.copyOf(hrefsBySite.getOrDefault(site, Set.of()));
+  }
+
+  @Override
+  public Set<String> findKnownHrefs(String site, Collection<String> hrefs) {
+    Set<String> stored = hrefsBySite.getOrDefault(site, Set.of());
+    return hrefs.stream().filter(href -> href != null && stored.contains(href)).collect(Collectors.toSet());
+  }
+
+  @Override
+  public void storeWatermark(long scrapeJobId, String href) {
+  }
+
+  @Override
+  public ScrapeCheckpoint getCheckpoint(long scrapeJobId) {
+    return null;
+  }
+
+  @Override
+  public void storeCheckpoint(long scrapeJobId, int pageIndex, List<String> pendingHrefs) {
+  }
+
+  @Override
+  public void deleteCheckpoint(long scrapeJobId) {
+  }
+
+  @Override
+  public PageValidator getPageValidator(String url) {
+    return null;
+  }
+
+  @Override
+  public void storePageValidator(String url, String etag, String lastModified, String contentHash) {
+  }
+
+  long getStored(String site) {
+    AtomicLong count = storedBySite.get(site);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * get ready for the next run
+   *
+   * @param keepHrefs whether the postings stored so far count as duplicates in it
+   */
+  void reset(boolean keepHrefs) {
+    storedBySite.clear();
+    if (!keepHrefs)
+      hrefsBySite.clear();
+  }
+}
@@ -0,0 +1,275 @@
+package com.ajisaac.scrapebatch.bench;
+
+import com.ajisaac.scrapebatch.dto.ScrapeJob;
+import com.ajisaac.scrapebatch.network.FetchEngine;
+import com.ajisaac.scrapebatch.network.HostStats;
+import com.ajisaac.scrapebatch.network.PageArchive;
+import com.ajisaac.scrapebatch.network.ScrapeThreads;
+import com.ajisaac.scrapebatch.network.WebsocketNotifier;
+import com.ajisaac.scrapebatch.scrape.ScrapingExecutorType;
+import com.ajisaac.scrapebatch.scrape.executors.RunStats;
+import com.ajisaac.scrapebatch.scrape.executors.ScrapingExecutor;
+import com.ajisaac.scrapebatch.websocket.MessageService;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the real scrapers and executors end to end without touching the job sites, so fetch and
+ * executor changes can be compared on the same input.
+ *
+ * <pre>
+ *   record   scrape the live sites once, every page fetched is kept in the fixtures directory
+ *   replay   serve the fixtures from a local stub server and time the scrapers against it
+ * </pre>
+ *
+ * In replay mode the job sites' hosts resolve to the stub, through a hosts file handed to the jvm,
+ * and every scrape job starts at the stub's url for its site. Nothing else resolves, so a replay
+ * can't reach the live sites even by accident.
+ *
+ * Run it with scripts/bench.sh, e.g.
+ * <pre>
+ *   scripts/bench.sh --mode record --fixtures data/fixtures
+ *   scripts/bench.sh --fixtures data/fixtures --latency-ms 80 --jitter-ms 40 --error-rate 0.02 --runs 3
+ * </pre>
+ *
+ * Options: --mode record|replay, --fixtures dir, --sites WWR,REMOTECO,..., --runs n,
+ * --latency-ms n, --jitter-ms n, --error-rate 0..1, --max-pages n (per site), --max-in-flight n,
+ * --keep-state (runs after the first see the postings and watermarks of the one before, to time a
+ * scrape that is caught up), --verbose. Run with -Dscrape.threads.virtual=true to time the virtual
+ * thread mode.
+ *
+ * Allocation is summed over the threads alive at the end of the run, so it misses whatever a
+ * thread allocated if it died during the run. Good enough to compare two builds.
+ */
+public class ScrapeBenchmark {
+
+  // where each site's listing starts, the same as the scrapers' defaults
+  private static final Map<ScrapingExecutorType, String> START_URLS = new LinkedHashMap<>();
+
+  static {
+    START_URLS.put(ScrapingExecutorType.WWR, "https://weworkremotely.com/categories/remote-programming-jobs");
+    START_URLS.put(ScrapingExecutorType.REMOTECO, "https://remote.co/remote-jobs/developer");
+    START_URLS.put(ScrapingExecutorType.REMOTEOKIO, "https://remoteok.io/remote-dev-jobs");
+    START_URLS.put(ScrapingExecutorType.STACKOVERFLOW, "https://stackoverflow.com/jobs?sort=p&r=true");
+    START_URLS.put(ScrapingExecutorType.WORKINGNOMADS, "https://www.workingnomads.co/api/exposed_jobs");
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseOptions(args);
+    boolean record = "record".equals(options.getOrDefault("mode", "replay"));
+    Path fixtures = Paths.get(options.getOrDefault("fixtures", "data/fixtures"));
+    List<ScrapingExecutorType> sites = sites(options.get("sites"));
+    int runs = Integer.parseInt(options.getOrDefault("runs", "1"));
+    int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "8"));
+    boolean keepState = options.containsKey("keep-state");
+    boolean verbose = options.containsKey("verbose");
+    Set<String> hosts = START_URLS.values().stream().map(url -> URI.create(url).getHost()).collect(Collectors.toSet());
+
+    // the jvm reads this the first time it resolves a name, so it goes before anything else
+    if (!record)
+      System.setProperty("jdk.net.hosts.file", hostsFile(hosts).toString());
+
+    // the fetch engine and page archive read their config once, so it all has to be in place
+    // before either is touched
+    System.setProperty("scrape.archive.enabled", String.valueOf(record));
+    System.setProperty("scrape.archive.dir", fixtures.toString());
+
+    StubJobBoardServer stub = record ? null : new StubJobBoardServer(new PageArchive(true, fixtures), hosts,
+      Long.parseLong(options.getOrDefault("latency-ms", "0")),
+      Long.parseLong(options.getOrDefault("jitter-ms", "0")),
+      Double.parseDouble(options.getOrDefault("error-rate", "0")),
+      Integer.parseInt(options.getOrDefault("max-pages", "0")));
+    if (stub != null)
+      stub.start();
+
+    var db = new BenchDatabaseService();
+    var notifier = new BenchNotifier(verbose);
+    Map<ScrapingExecutorType, ScrapeJob> jobs = new LinkedHashMap<>();
+    try {
+      for (int run = 1; run <= runs; run++) {
+        db.reset(keepState);
+        if (!keepState)
+          jobs.clear();
+        for (ScrapingExecutorType site : sites)
+          jobs.computeIfAbsent(site, s -> jobFor(s, stub));
+        System.out.println("run " + run + " of " + runs + (record ? " (recording to " + fixtures + ")" : ""));
+        runOnce(jobs, db, notifier, maxInFlight);
+      }
+      printHostStats();
+      if (stub != null)
+        System.out.printf("stub served %d pages, %d missing, %d injected errors%n",
+          stub.getServed(), stub.getMissing(), stub.getInjectedErrors());
+    } finally {
+      if (stub != null)
+        stub.close();
+    }
+    System.exit(0);
+  }
+
+  private static void runOnce(Map<ScrapingExecutorType, ScrapeJob> jobs, BenchDatabaseService db,
+                              WebsocketNotifier notifier, int maxInFlight) throws Exception {
+    var sites = jobs.keySet();
+    ExecutorService pool = ScrapeThreads.newExecutor("bench-run", sites.size());
+    long allocatedBefore = allocatedBytes();
+    long start = System.nanoTime();
+
+    Map<ScrapingExecutorType, Future<Long>> elapsed = new LinkedHashMap<>();
+    Map<ScrapingExecutorType, ScrapingExecutor> executors = new LinkedHashMap<>();
+    for (ScrapingExecutorType site : sites) {
+      ScrapingExecutor executor = jobs.get(site).getExecutor();
+      executors.put(site, executor);
+      executor.setDb(db);
+      executor.setWebsocketNotifier(notifier);
+      executor.setMaxInFlight(maxInFlight);
+      elapsed.put(site, pool.submit(() -> {
+        long siteStart = System.nanoTime();
+        executor.scrape();
+        return System.nanoTime() - siteStart;
+      }));
+    }
+
+    System.out.printf("  %-15s %10s %10s %12s%n", "site", "postings", "seconds", "postings/s");
+    for (var entry : elapsed.entrySet()) {
+      long nanos = entry.getValue().get();
+      long postings = db.getStored(entry.getKey().name());
+      System.out.printf("  %-15s %10d %10.2f %12.1f%n",
+        entry.getKey(), postings, nanos / 1e9, perSecond(postings, nanos));
+    }
+    pool.shutdown();
+
+    long totalNanos = System.nanoTime() - start;
+    long allocated = allocatedBytes() - allocatedBefore;
+    long postings = sites.stream().mapToLong(site -> db.getStored(site.name())).sum();
+    System.out.printf("  %-15s %10d %10.2f %12.1f%n", "total", postings, totalNanos / 1e9, perSecond(postings, totalNanos));
+    if (allocated >= 0)
+      System.out.printf("  allocated %.1f MB, %s per posting%n", allocated / 1e6,
+        postings == 0 ? "-" : String.format("%.1f KB", allocated / 1e3 / postings));
+
+    System.out.printf("  %-15s %8s %8s %10s %10s %10s %8s%n",
+      "phases", "pages", "failed", "fetch ms", "parse ms", "persist ms", "p95 ms");
+    executors.forEach((site, executor) -> {
+      RunStats stats = executor.getRunStats();
+      System.out.printf("  %-15s %8d %8d %10d %10d %10d %8d%n", site,
+        stats.getMainPages() + stats.getDescriptionPages(), stats.getFailures(), stats.getFetchMillis(),
+        stats.getParseMillis(), stats.getPersistMillis(), stats.getPageLatencyPercentile(0.95));
+    });
+  }
+
+  /**
+   * Replayed jobs start at the stub and lift the politeness budget, there is no site on the other
+   * end to be polite to. A recording job starts at the live site.
+   */
+  private static ScrapeJob jobFor(ScrapingExecutorType site, StubJobBoardServer stub) {
+    ScrapeJob job = new ScrapeJob();
+    job.setSite(site.name());
+    job.setName("bench-" + site.name().toLowerCase());
+    URI start = URI.create(START_URLS.get(site));
+    job.setUrl((stub == null ? start : stub.local(start)).toString());
+    if (stub != null) {
+      job.setRequestsPerMinute(600_000.0);
+      job.setBurst(1_000);
+    }
+    return job;
+  }
+
+  /**
+   * a hosts file pointing the hosts at the loopback address, and nothing else
+   */
+  private static Path hostsFile(Set<String> hosts) throws IOException {
+    Path file = Files.createTempFile("bench-hosts", "");
+    file.toFile().deleteOnExit();
+    StringBuilder lines = new StringBuilder();
+    for (String host : hosts)
+      lines.append("127.0.0.1 ").append(host).append('\n');
+    Files.writeString(file, lines);
+    return file;
+  }
+
+  private static void printHostStats() {
+    System.out.printf("%-28s %9s %8s %8s %9s %9s%n", "host", "requests", "failures", "retries", "p50 ms", "p99 ms");
+    for (HostStats stats : FetchEngine.getInstance().getHostStats())
+      System.out.printf("%-28s %9d %8d %8d %9d %9d%n", stats.getHost(), stats.getRequests(), stats.getFailures(),
+        stats.getRetries(), stats.getP50LatencyMillis(), stats.getP99LatencyMillis());
+  }
+
+  private static double perSecond(long count, long nanos) {
+    return nanos == 0 ? 0 : count / (nanos / 1e9);
+  }
+
+  /**
+   * bytes allocated so far by every live thread, -1 if the jvm can't tell us
+   */
+  private static long allocatedBytes() {
+    var bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    var threads = (com.sun.management.ThreadMXBean) bean;
+    if (!threads.isThreadAllocatedMemorySupported())
+      return -1;
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    long total = 0;
+    for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds()))
+      if (bytes > 0)
+        total += bytes;
+    return total;
+  }
+
+  private static List<ScrapingExecutorType> sites(String option) {
+    if (option == null || option.isBlank())
+      return new ArrayList<>(START_URLS.keySet());
+    List<ScrapingExecutorType> sites = new ArrayList<>();
+    for (String name : option.split(","))
+      sites.add(ScrapingExecutorType.valueOf(name.trim().toUpperCase()));
+    return sites;
+  }
+
+  /**
+   * --key value pairs, a --flag without a value maps to "true"
+   */
+  private static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (!args[i].startsWith("--"))
+        throw new IllegalArgumentException("unexpected argument " + args[i]);
+      String key = args[i].substring(2);
+      if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+        options.put(key, args[++i]);
+      else
+        options.put(key, "true");
+    }
+    return options;
+  }
+
+  /**
+   * keeps the scrapers' progress messages off the console unless asked for
+   */
+  private static class BenchNotifier extends WebsocketNotifier {
+    private final boolean verbose;
+
+    BenchNotifier(boolean verbose) {
+      super(new MessageService());
+      this.verbose = verbose;
+    }
+
+    @Override
+    protected void publish(String msg, String name) {
+      if (verbose)
+        System.out.println(msg);
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package com.ajisaac.scrapebatch.bench;
+
+import com.ajisaac.scrapebatch.network.PageArchive;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local http server that plays the job sites back from recorded pages. The job sites' hosts are
+ * pointed at it (see ScrapeBenchmark), so https://remote.co/jobs is asked for as
+ * http://remote.co:{port}/jobs and answered with the page recorded for the https url. Links to
+ * the sites inside the pages are rewritten the same way, so the scrapers follow them back here.
+ * Latency and errors can be added on top to see how the scrapers hold up against a slow or
+ * flaky site.
+ */
+class StubJobBoardServer implements Closeable {
+
+  private final PageArchive fixtures;
+  private final Set<String> hosts;
+  private final long latencyMillis;
+  private final long jitterMillis;
+  private final double errorRate;
+  private final int maxPagesPerHost;
+
+  private final Map<String, Set<String>> servedByHost = new ConcurrentHashMap<>();
+  private final AtomicLong served = new AtomicLong();
+  private final AtomicLong missing = new AtomicLong();
+  private final AtomicLong injectedErrors = new AtomicLong();
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private int port;
+
+  /**
+   * @param hosts           the job sites' hosts, requests for any other host get a 400
+   * @param maxPagesPerHost different urls answered per host before the rest get a 404, 0 for no
+   *                        limit
+   */
+  StubJobBoardServer(PageArchive fixtures, Set<String> hosts, long latencyMillis, long jitterMillis,
+                     double errorRate, int maxPagesPerHost) {
+    this.fixtures = fixtures;
+    this.hosts = hosts;
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+    this.errorRate = errorRate;
+    this.maxPagesPerHost = maxPagesPerHost;
+  }
+
+  /**
+   * start listening on a free local port
+   */
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    executor = Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "stub-job-board");
+      t.setDaemon(true);
+      return t;
+    });
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+    port = server.getAddress().getPort();
+  }
+
+  /**
+   * where to send the request for a page of one of the sites, https://remote.co/jobs becomes
+   * http://remote.co:{port}/jobs
+   */
+  URI local(URI uri) {
+    return URI.create(local(uri.toString()));
+  }
+
+  private String local(String url) {
+    for (String host : hosts) {
+      url = url.replace("https://" + host, "http://" + host + ":" + port)
+        .replace("https:\\/\\/" + host, "http:\\/\\/" + host + ":" + port);
+    }
+    return url;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      Optional<URI> original = originalUri(exchange);
+      if (original.isEmpty()) {
+        respond(exchange, 400, null);
+        return;
+      }
+      URI uri = original.get();
+
+      pause();
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        injectedErrors.incrementAndGet();
+        respond(exchange, 503, null);
+        return;
+      }
+
+      Optional<String> page = servedWithinLimit(uri) ? fixtures.load(uri.toString()) : Optional.empty();
+      if (page.isEmpty()) {
+        missing.incrementAndGet();
+        respond(exchange, 404, null);
+        return;
+      }
+      served.incrementAndGet();
+      respond(exchange, 200, local(page.get()));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * http://remote.co:{port}/jobs?page=2 back to https://remote.co/jobs?page=2
+   */
+  private Optional<URI> originalUri(HttpExchange exchange) {
+    String host = exchange.getRequestHeaders().getFirst("Host");
+    if (host == null)
+      return Optional.empty();
+    host = host.replaceFirst(":\\d+$", "").toLowerCase();
+    if (!hosts.contains(host))
+      return Optional.empty();
+
+    URI request = exchange.getRequestURI();
+    String path = request.getRawPath() == null || request.getRawPath().isEmpty() ? "/" : request.getRawPath();
+    String query = request.getRawQuery() == null ? "" : "?" + request.getRawQuery();
+    try {
+      return Optional.of(URI.create("https://" + host + path + query));
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private boolean servedWithinLimit(URI uri) {
+    if (maxPagesPerHost <= 0)
+      return true;
+    Set<String> seen = servedByHost.computeIfAbsent(uri.getHost(), h -> ConcurrentHashMap.newKeySet());
+    synchronized (seen) {
+      if (seen.contains(uri.toString()))
+        return true;
+      if (seen.size() >= maxPagesPerHost)
+        return false;
+      seen.add(uri.toString());
+      return true;
+    }
+  }
+
+  private void pause() {
+    long wait = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+    if (wait <= 0)
+      return;
+    try {
+      Thread.sleep(wait);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * gzip the page when the client asks for it, like the real sites do
+   */
+  private static void respond(HttpExchange exchange, int status, String page) throws IOException {
+    if (page == null) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+
+    byte[] body = page.getBytes(StandardCharsets.UTF_8);
+    String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (accept != null && accept.contains("gzip")) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+        gzip.write(body);
+      }
+      body = compressed.toByteArray();
+      exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+    }
+    exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  long getServed() {
+    return served.get();
+  }
+
+  long getMissing() {
+    return missing.get();
+  }
+
+  long getInjectedErrors() {
+    return injectedErrors.get();
+  }
+
+  @Override
+  public void close() {
+    if (server != null)
+      server.stop(0);
+    if (executor != null)
+      executor.shutdownNow();
+  }
+}
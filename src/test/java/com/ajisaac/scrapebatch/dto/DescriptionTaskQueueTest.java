@@ -0,0 +1,243 @@
+package com.ajisaac.scrapebatch.dto;
+
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+
+import javax.inject.Inject;
+import javax.transaction.UserTransaction;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The description queue's SQL against a real Postgres, see PostgresResource
+ */
+@QuarkusTest
+@QuarkusTestResource(PostgresResource.class)
+@EnabledIf("com.ajisaac.scrapebatch.dto.PostgresResource#isAvailable")
+class DescriptionTaskQueueTest {
+
+  private static final long LEASE = TimeUnit.MINUTES.toMillis(1);
+  private static final int MAX_ATTEMPTS = 3;
+
+  @Inject
+  DatabaseService db;
+  @Inject
+  DescriptionTaskRepository tasks;
+  @Inject
+  JobPostingRepository postings;
+  @Inject
+  UserTransaction transaction;
+
+  @BeforeEach
+  void emptyTables() throws Exception {
+    transaction.begin();
+    tasks.deleteAll();
+    postings.deleteAll();
+    transaction.commit();
+  }
+
+  @Test
+  void claimLeasesEachTaskToOneOwner() {
+    assertEquals(3, db.enqueueDescriptionTasks(1, postings("a", "b", "c"), MAX_ATTEMPTS));
+
+    List<DescriptionTask> claimed = db.claimDescriptionTasks("first", 10, LEASE, MAX_ATTEMPTS);
+    assertEquals(3, claimed.size());
+    for (DescriptionTask task : claimed) {
+      assertEquals("first", task.getLeasedBy());
+      assertEquals(1, task.getAttempts());
+      assertTrue(task.getLeaseUntil() > System.currentTimeMillis());
+      assertNotNull(task.readPosting());
+    }
+    assertTrue(db.claimDescriptionTasks("second", 10, LEASE, MAX_ATTEMPTS).isEmpty());
+
+    var stats = db.getDescriptionQueueStats(MAX_ATTEMPTS);
+    assertEquals(0, stats.getQueued());
+    assertEquals(3, stats.getLeased());
+    assertEquals(0, stats.getFailed());
+  }
+
+  @Test
+  void queueingAPostingTwiceKeepsOneTask() {
+    assertEquals(2, db.enqueueDescriptionTasks(1, postings("a", "b"), MAX_ATTEMPTS));
+    assertEquals(1, db.enqueueDescriptionTasks(1, postings("a", "b", "c"), MAX_ATTEMPTS));
+    // another job's task for the same posting is its own
+    assertEquals(1, db.enqueueDescriptionTasks(2, postings("a"), MAX_ATTEMPTS));
+    assertEquals(4, tasks.count());
+  }
+
+  @Test
+  void expiredLeaseCanBeClaimedAgain() throws Exception {
+    db.enqueueDescriptionTasks(1, postings("a"), MAX_ATTEMPTS);
+    long id = db.claimDescriptionTasks("first", 10, 1, MAX_ATTEMPTS).get(0).getId();
+    Thread.sleep(20);
+
+    List<DescriptionTask> claimed = db.claimDescriptionTasks("second", 10, LEASE, MAX_ATTEMPTS);
+    assertEquals(1, claimed.size());
+    assertEquals(id, claimed.get(0).getId());
+    assertEquals(2, claimed.get(0).getAttempts());
+
+    // the first owner lost it, so it neither stores the posting nor drops the task
+    assertFalse(db.completeDescriptionTask(id, "first", posting("a")));
+    assertEquals(0, postings.count());
+    assertTrue(db.completeDescriptionTask(id, "second", posting("a")));
+    assertEquals(1, postings.count());
+    assertEquals(0, tasks.count());
+  }
+
+  @Test
+  void releasedTaskWaitsOutTheDelay() {
+    db.enqueueDescriptionTasks(1, postings("a"), MAX_ATTEMPTS);
+    long id = db.claimDescriptionTasks("first", 10, LEASE, MAX_ATTEMPTS).get(0).getId();
+
+    // only the owner may hand it back
+    db.failDescriptionTask(id, "second", 0, "not mine");
+    assertTrue(db.claimDescriptionTasks("second", 10, LEASE, MAX_ATTEMPTS).isEmpty());
+
+    db.failDescriptionTask(id, "first", 0, "boom");
+    var claimed = db.claimDescriptionTasks("second", 10, LEASE, MAX_ATTEMPTS);
+    assertEquals(1, claimed.size());
+    assertEquals(2, claimed.get(0).getAttempts());
+
+    // once handed back it isn't the first owner's to hand back again
+    db.failDescriptionTask(id, "first", LEASE, "not mine");
+    db.failDescriptionTask(id, "second", LEASE, "boom again");
+    assertTrue(db.claimDescriptionTasks("third", 10, LEASE, MAX_ATTEMPTS).isEmpty());
+    assertEquals(1, db.getDescriptionQueueStats(MAX_ATTEMPTS).getQueued());
+    assertEquals("boom again", tasks.findById(id).getLastError());
+  }
+
+  @Test
+  void queueingAgainRevivesATaskOutOfAttempts() {
+    db.enqueueDescriptionTasks(1, postings("a"), 1);
+    long id = db.claimDescriptionTasks("first", 10, LEASE, 1).get(0).getId();
+    db.failDescriptionTask(id, "first", 0, "boom");
+    assertTrue(db.claimDescriptionTasks("first", 10, LEASE, 1).isEmpty());
+    assertEquals(1, db.getDescriptionQueueStats(1).getFailed());
+
+    assertEquals(1, db.enqueueDescriptionTasks(1, postings("a"), 1));
+    var claimed = db.claimDescriptionTasks("first", 10, LEASE, 1);
+    assertEquals(1, claimed.size());
+    assertEquals(1, claimed.get(0).getAttempts());
+
+    // one that is leased is left to its owner
+    assertEquals(0, db.enqueueDescriptionTasks(1, postings("a"), 1));
+  }
+
+  @Test
+  void competingClaimersNeverShareATask() throws Exception {
+    List<String> hrefs = new ArrayList<>();
+    for (int i = 0; i < 200; i++)
+      hrefs.add("job-" + i);
+    db.enqueueDescriptionTasks(1, postings(hrefs.toArray(new String[0])), MAX_ATTEMPTS);
+
+    List<List<Long>> claims = race(4, owner -> {
+      List<Long> ids = new ArrayList<>();
+      List<DescriptionTask> batch;
+      while (!(batch = db.claimDescriptionTasks(owner, 3, LEASE, MAX_ATTEMPTS)).isEmpty())
+        batch.forEach(task -> ids.add(task.getId()));
+      return ids;
+    });
+
+    Set<Long> seen = new HashSet<>();
+    for (List<Long> ids : claims)
+      for (long id : ids)
+        assertTrue(seen.add(id), "task " + id + " was claimed twice");
+    assertEquals(200, seen.size());
+  }
+
+  @Test
+  void competingQueuersQueueEachPostingOnce() throws Exception {
+    List<List<Integer>> queued = race(4, owner -> List.of(
+      db.enqueueDescriptionTasks(1, postings("a", "b", "c", "d", "e"), MAX_ATTEMPTS)));
+
+    assertEquals(5, queued.stream().mapToInt(counts -> counts.get(0)).sum());
+    assertEquals(5, tasks.count());
+  }
+
+  @Test
+  void postingStoredByAnotherTaskIsNotStoredAgain() throws Exception {
+    // two jobs on the same site both found the posting before either stored it
+    db.enqueueDescriptionTasks(1, postings("a"), MAX_ATTEMPTS);
+    db.enqueueDescriptionTasks(2, postings("a"), MAX_ATTEMPTS);
+    List<DescriptionTask> claimed = db.claimDescriptionTasks("worker", 10, LEASE, MAX_ATTEMPTS);
+    assertEquals(2, claimed.size());
+
+    List<List<Boolean>> completed = race(2, owner -> {
+      var task = claimed.get(owner.equals("worker-0") ? 0 : 1);
+      return List.of(db.completeDescriptionTask(task.getId(), "worker", task.readPosting()));
+    });
+
+    assertTrue(completed.get(0).get(0));
+    assertTrue(completed.get(1).get(0));
+    assertEquals(1, postings.count());
+    assertEquals(0, tasks.count());
+  }
+
+  @Test
+  void postingRolledBackIsNotKnown() throws Exception {
+    transaction.begin();
+    db.storeJobPostingInDatabase(posting("a"));
+    transaction.rollback();
+    db.storeJobPostingInDatabase(posting("b"));
+
+    assertEquals(Set.of("https://example.com/b"),
+      db.findKnownHrefs("WWR", List.of("https://example.com/a", "https://example.com/b")));
+  }
+
+  private interface Worker<T> {
+    T run(String owner) throws Exception;
+  }
+
+  /**
+   * run the workers at the same time, each under its own owner name, worker-0 and up
+   */
+  private static <T> List<T> race(int workers, Worker<T> worker) throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      var start = new CountDownLatch(1);
+      List<Future<T>> futures = new ArrayList<>();
+      for (int i = 0; i < workers; i++) {
+        String owner = "worker-" + i;
+        Callable<T> call = () -> {
+          start.await();
+          return worker.run(owner);
+        };
+        futures.add(pool.submit(call));
+      }
+      start.countDown();
+      List<T> results = new ArrayList<>();
+      for (Future<T> future : futures)
+        results.add(future.get(30, TimeUnit.SECONDS));
+      return results;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static List<JobPosting> postings(String... hrefs) {
+    List<JobPosting> list = new ArrayList<>();
+    for (String href : hrefs)
+      list.add(posting(href));
+    return list;
+  }
+
+  private static JobPosting posting(String href) {
+    var posting = new JobPosting();
+    posting.setHref("https://example.com/" + href);
+    posting.setJobSite("WWR");
+    return posting;
+  }
+}
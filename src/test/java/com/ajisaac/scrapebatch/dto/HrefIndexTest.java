@@ -0,0 +1,69 @@
+package com.ajisaac.scrapebatch.dto;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HrefIndexTest {
+
+  /**
+   * the database as another instance fills it, rows of id and href
+   */
+  private final List<Object[]> stored = new ArrayList<>();
+
+  private List<Object[]> after(String site, long afterId) {
+    List<Object[]> rows = new ArrayList<>();
+    for (Object[] row : stored)
+      if ((long) row[0] > afterId)
+        rows.add(row);
+    return rows;
+  }
+
+  @Test
+  void postingStoredElsewhereCountsOnTheNextLookup() {
+    var index = new HrefIndex(10, null);
+    stored.add(new Object[]{1L, "https://example.com/a"});
+    assertEquals(List.of("https://example.com/a"),
+      index.candidates("WWR", List.of("https://example.com/a", "https://example.com/b"), this::after));
+
+    stored.add(new Object[]{2L, "https://example.com/b"});
+    assertEquals(List.of("https://example.com/a", "https://example.com/b"),
+      index.candidates("WWR", List.of("https://example.com/a", "https://example.com/b"), this::after));
+  }
+
+  @Test
+  void postingCommittedOutOfOrderIsStillRead() {
+    var index = new HrefIndex(10, null);
+    stored.add(new Object[]{20L, "https://example.com/a"});
+    index.candidates("WWR", List.of(), this::after);
+
+    // took id 15 before the one above, but committed after we read up to 20
+    stored.add(new Object[]{15L, "https://example.com/b"});
+    assertEquals(List.of("https://example.com/b"),
+      index.candidates("WWR", List.of("https://example.com/b"), this::after));
+  }
+
+  @Test
+  void corruptSnapshotFallsBackToTheDatabase(@TempDir Path dir) throws IOException {
+    try (var out = new DataOutputStream(Files.newOutputStream(dir.resolve("WWR.fp")))) {
+      out.writeInt(0x48524546);
+      out.writeInt(1);
+      out.writeLong(50);
+      // cut off after a count far larger than the file
+      out.writeInt(Integer.MAX_VALUE);
+    }
+    stored.add(new Object[]{1L, "https://example.com/a"});
+
+    var index = new HrefIndex(10, dir);
+    assertEquals(List.of("https://example.com/a"),
+      index.candidates("WWR", List.of("https://example.com/a"), this::after));
+  }
+}
@@ -0,0 +1,54 @@
+package com.ajisaac.scrapebatch.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+  @Test
+  void valuesSurviveAWriteAndRead() throws IOException {
+    var set = new LongHashSet();
+    for (long value = 1; value <= 1000; value++)
+      set.add(value * 31);
+
+    var bytes = new ByteArrayOutputStream();
+    set.writeTo(new DataOutputStream(bytes));
+    var read = new LongHashSet();
+    read.readFrom(in(bytes.toByteArray()), 1000);
+
+    assertEquals(1000, read.size());
+    for (long value = 1; value <= 1000; value++)
+      assertTrue(read.contains(value * 31));
+    assertFalse(read.contains(7));
+  }
+
+  @Test
+  void countLargerThanAnyTableIsRejected() {
+    assertThrows(IOException.class, () -> new LongHashSet().readFrom(count(Integer.MAX_VALUE), Long.MAX_VALUE));
+  }
+
+  @Test
+  void countLargerThanTheInputIsRejected() {
+    var set = new LongHashSet();
+    long before = set.sizeInBytes();
+    assertThrows(IOException.class, () -> set.readFrom(count(100_000), 10));
+    assertEquals(before, set.sizeInBytes());
+  }
+
+  private static DataInputStream count(int count) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    new DataOutputStream(bytes).writeInt(count);
+    return in(bytes.toByteArray());
+  }
+
+  private static DataInputStream in(byte[] bytes) {
+    return new DataInputStream(new ByteArrayInputStream(bytes));
+  }
+}
@@ -0,0 +1,50 @@
+package com.ajisaac.scrapebatch.dto;
+
+import io.quarkus.test.common.QuarkusTestResourceLifecycleManager;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.Map;
+
+/**
+ * A Postgres for tests that need the real thing. One is started in a container, unless TEST_DB_URL
+ * (with TEST_DB_USER and TEST_DB_PASS) points at one already running. The tests wipe the tables
+ * they use, so only point it at a throwaway database.
+ */
+public class PostgresResource implements QuarkusTestResourceLifecycleManager {
+
+  private PostgreSQLContainer<?> container;
+
+  /**
+   * false when there is neither a database configured nor docker to start one in
+   */
+  public static boolean isAvailable() {
+    return System.getenv("TEST_DB_URL") != null || DockerClientFactory.instance().isDockerAvailable();
+  }
+
+  @Override
+  public Map<String, String> start() {
+    String url = System.getenv("TEST_DB_URL");
+    if (url != null)
+      return config(url, System.getenv().getOrDefault("TEST_DB_USER", "postgres"),
+        System.getenv().getOrDefault("TEST_DB_PASS", ""));
+
+    container = new PostgreSQLContainer<>("postgres:13-alpine");
+    container.start();
+    return config(container.getJdbcUrl(), container.getUsername(), container.getPassword());
+  }
+
+  @Override
+  public void stop() {
+    if (container != null)
+      container.stop();
+  }
+
+  private static Map<String, String> config(String url, String user, String password) {
+    return Map.of(
+      "quarkus.datasource.jdbc.url", url,
+      "quarkus.datasource.username", user,
+      "quarkus.datasource.password", password,
+      "quarkus.hibernate-orm.database.generation", "drop-and-create");
+  }
+}
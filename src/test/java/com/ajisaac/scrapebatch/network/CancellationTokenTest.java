@@ -0,0 +1,95 @@
+package com.ajisaac.scrapebatch.network;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CancellationTokenTest {
+
+  @Test
+  void callbackCanRemoveItselfWhileCancelling() {
+    var token = new CancellationToken();
+    Runnable[] remove = new Runnable[1];
+    remove[0] = token.onCancel(() -> remove[0].run());
+    var ran = new AtomicInteger();
+    token.onCancel(ran::incrementAndGet);
+
+    assertDoesNotThrow(token::cancel);
+    assertTrue(token.isCancelled());
+    assertEquals(1, ran.get());
+  }
+
+  @Test
+  void everyCallbackRunsWhenOneThrows() {
+    var token = new CancellationToken();
+    var ran = new AtomicInteger();
+    token.onCancel(() -> {
+      throw new IllegalStateException("boom");
+    });
+    token.onCancel(ran::incrementAndGet);
+
+    assertThrows(IllegalStateException.class, token::cancel);
+    assertEquals(1, ran.get());
+  }
+
+  @Test
+  void callbackRunsRightAwayOnceCancelled() {
+    var token = new CancellationToken();
+    token.cancel();
+    var ran = new AtomicInteger();
+    token.onCancel(ran::incrementAndGet);
+    assertEquals(1, ran.get());
+  }
+
+  /**
+   * the requests' own handlers take their callbacks off the token while it is cancelling them
+   */
+  @Test
+  void cancelWhileSendIsPending() throws Exception {
+    var arrived = new CountDownLatch(1);
+    var release = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", exchange -> {
+      arrived.countDown();
+      try {
+        release.await(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        exchange.close();
+      }
+    });
+    server.start();
+
+    try {
+      var token = new CancellationToken();
+      var politeness = new Politeness(600_000, 1_000);
+      List<CompletableFuture<FetchResult>> pending = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/slow/" + i);
+        pending.add(FetchEngine.getInstance().fetchAsync(uri, politeness, null, token));
+      }
+      assertTrue(arrived.await(10, TimeUnit.SECONDS), "no request reached the server");
+
+      assertDoesNotThrow(token::cancel);
+      for (CompletableFuture<FetchResult> future : pending)
+        assertFalse(future.get(10, TimeUnit.SECONDS).isSuccessful());
+    } finally {
+      release.countDown();
+      server.stop(0);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package com.ajisaac.scrapebatch.network;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamedPageTest {
+
+  /**
+   * the server sends the headers and a little of the body, then nothing, the parser must not wait
+   * on it past the deadline
+   */
+  @Test
+  void stalledBodyFailsAtTheParseDeadline() throws Exception {
+    var release = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/", exchange -> {
+      try {
+        exchange.sendResponseHeaders(200, 0);
+        exchange.getResponseBody().write("<html><body>".getBytes(StandardCharsets.UTF_8));
+        exchange.getResponseBody().flush();
+        release.await(30, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        exchange.close();
+      }
+    });
+    server.start();
+
+    try {
+      var settings = new FetchSettings(Duration.ofSeconds(5), Duration.ofSeconds(5), 2, 8, "test", 1024 * 1024,
+        Duration.ofSeconds(1), new RetryPolicy(1, Duration.ofMillis(10), Duration.ofMillis(10)));
+      URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/stalls");
+      StreamedPage page = new FetchEngine(settings).fetchStreamAsync(uri, new Politeness(600_000, 1_000))
+        .get(10, TimeUnit.SECONDS);
+      assertTrue(page.isSuccessful());
+
+      long start = System.nanoTime();
+      try (page) {
+        IOException e = assertThrows(IOException.class, () -> page.getBody().readAllBytes());
+        assertTrue(e.getMessage().contains("longer than"), e.getMessage());
+      }
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "read outlived the deadline");
+    } finally {
+      release.countDown();
+      server.stop(0);
+    }
+  }
+
+  @Test
+  void pageReadToTheEndIsArchived(@TempDir Path dir) throws IOException {
+    var archive = new PageArchive(true, dir);
+    URI uri = URI.create("https://example.com/jobs/1");
+    try (InputStream in = archiving(uri, "<html>job</html>", archive)) {
+      in.readAllBytes();
+    }
+    assertEquals("<html>job</html>", archive.load(uri.toString()).orElse(null));
+  }
+
+  @Test
+  void pageLeftUnreadIsNotArchived(@TempDir Path dir) throws IOException {
+    var archive = new PageArchive(true, dir);
+    URI uri = URI.create("https://example.com/jobs/2");
+    try (InputStream in = archiving(uri, "<html>job</html>", archive)) {
+      in.read(new byte[4]);
+    }
+    assertTrue(archive.load(uri.toString()).isEmpty());
+  }
+
+  private static InputStream archiving(URI uri, String page, PageArchive archive) {
+    return new ArchivingInputStream(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), uri,
+      StandardCharsets.UTF_8, archive);
+  }
+}